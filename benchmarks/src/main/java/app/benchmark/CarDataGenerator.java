@@ -0,0 +1,99 @@
+package app.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * This class used for writing synthetic carsType.xml and CarsBrand.csv files of any size,
+ * in the same layout as the files in source-file
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+public class CarDataGenerator {
+
+    public static final String XML_FILE_NAME = "carsType.xml";
+    public static final String CSV_FILE_NAME = "CarsBrand.csv";
+
+    private static final String[][] MODELS = {
+            {"RAV4", "Toyota", "01/15/2023"},
+            {"Civic", "Honda", "11/20/2022"},
+            {"F-150", "Ford", "03/10/2023"},
+            {"Model X", "Tesla", "02/05/2023"},
+            {"330i", "BMW", "09/12/2022"},
+            {"Q5", "Audi", "04/25/2023"},
+            {"Silverado", "Chevrolet", "05/18/2023"},
+            {"C-Class", "Mercedes-Benz", "12/01/2022"},
+            {"Rogue", "Nissan", "08/22/2023"},
+            {"Elantra", "Hyundai", "04/14/2023"},
+    };
+    private static final String[] TYPES = {"SUV", "Sedan", "Truck"};
+
+    /**
+     * Usage: CarDataGenerator <outputDir> <cars> [seed]
+     * 
+     * @param args
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CarDataGenerator <outputDir> <cars> [seed]");
+            return;
+        }
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42L;
+        generate(Paths.get(args[0]), Integer.parseInt(args[1]), seed);
+    }
+
+    /**
+     * Write both files into the directory
+     * 
+     * @param directory
+     * @param cars
+     * @param seed
+     * @throws IOException
+     */
+    public static void generate(Path directory, int cars, long seed) throws IOException {
+        Files.createDirectories(directory);
+        writeXml(directory.resolve(XML_FILE_NAME), cars, new Random(seed));
+        writeCsv(directory.resolve(CSV_FILE_NAME));
+    }
+
+    private static void writeXml(Path file, int cars, Random random) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("<cars>\n");
+            for (int i = 0; i < cars; i++) {
+                String[] model = MODELS[random.nextInt(MODELS.length)];
+                double usd = 15000 + random.nextInt(70000);
+                writer.write("    <car>\n");
+                writer.write("        <type>" + TYPES[random.nextInt(TYPES.length)] + "</type>\n");
+                writer.write("        <model>" + model[0] + "</model>\n");
+                writer.write("        <price currency=\"USD\">" + price(usd) + "</price>\n");
+                writer.write("        <prices>\n");
+                writer.write("            <price currency=\"EUR\">" + price(usd * 0.92) + "</price>\n");
+                writer.write("            <price currency=\"GBP\">" + price(usd * 0.8) + "</price>\n");
+                writer.write("            <price currency=\"JPY\">" + price(usd * 110) + "</price>\n");
+                writer.write("        </prices>\n");
+                writer.write("    </car>\n");
+            }
+            writer.write("</cars>\n");
+        }
+    }
+
+    private static void writeCsv(Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("\uFEFF\"Brand,ReleaseDate\"\n");
+            for (String[] model : MODELS) {
+                writer.write("\"" + model[1] + "," + model[2] + "\"\n");
+            }
+        }
+    }
+
+    private static String price(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+}
@@ -0,0 +1,54 @@
+package app.benchmark;
+
+import app.model.Car;
+import app.model.CarTable;
+import app.service.CarIndex;
+import app.service.CarParser;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Generated input files shared by the benchmarks of one trial, sized with -p cars=N
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+@State(Scope.Benchmark)
+public class CarDataState {
+
+    @Param({"1000", "100000", "1000000"})
+    public int cars;
+
+    public Path directory;
+    public String xmlFile;
+    public String csvFile;
+    public List<Car> parsedCars;
+    public CarIndex carIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("car-bench-");
+        CarDataGenerator.generate(directory, cars, 42L);
+        xmlFile = directory.resolve(CarDataGenerator.XML_FILE_NAME).toString();
+        csvFile = directory.resolve(CarDataGenerator.CSV_FILE_NAME).toString();
+        parsedCars = CarParser.parse(xmlFile, csvFile);
+        carIndex = CarIndex.build(CarTable.of(parsedCars.stream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package app.benchmark;
+
+import app.constant.AppConstant;
+import app.model.Car;
+import app.service.CarFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * Benchmark of every filter type, scanning the parsed cars and through a {@link app.service.CarIndex}
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+@State(Scope.Benchmark)
+public class FilterBenchmark extends BenchmarkDefaults {
+
+    @Param({AppConstant.FILTER_BRAND_PRICE, AppConstant.FILTER_BRAND_RELEASE})
+    public String filterType;
+
+    @Benchmark
+    public List<Car> filter(CarDataState data) {
+        return CarFilter.filter(data.parsedCars, filterType, filterValue());
+    }
+
+    @Benchmark
+    public int[] filterIndexed(CarDataState data) {
+        return data.carIndex.filter(filterType, filterValue());
+    }
+
+    private String filterValue() {
+        return AppConstant.FILTER_BRAND_PRICE.equals(filterType) ? "Toyota,20000,60000" : "Toyota,2023-01-15";
+    }
+}
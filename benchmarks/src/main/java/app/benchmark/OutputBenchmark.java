@@ -0,0 +1,45 @@
+package app.benchmark;
+
+import app.constant.AppConstant;
+import app.output.OutputFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Benchmark of every output format. System.out is swapped for a stream that drops the bytes,
+ * so the terminal does not take part in the measurement
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+@State(Scope.Benchmark)
+public class OutputBenchmark extends BenchmarkDefaults {
+
+    @Param({AppConstant.OUTPUT_TABLE_PARAM, AppConstant.OUTPUT_TABLE_AUTO_PARAM, AppConstant.OUTPUT_JSON_PARAM, AppConstant.OUTPUT_XML_PARAM})
+    public String format;
+
+    private PrintStream originalOut;
+
+    @Setup(Level.Trial)
+    public void redirectOutput() {
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void restoreOutput() {
+        System.setOut(originalOut);
+    }
+
+    @Benchmark
+    public void formatAndPrint(CarDataState data) {
+        OutputFormatter.formatAndPrint(data.parsedCars, format);
+    }
+}
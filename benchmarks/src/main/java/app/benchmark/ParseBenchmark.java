@@ -0,0 +1,20 @@
+package app.benchmark;
+
+import app.model.Car;
+import app.service.CarParser;
+import org.openjdk.jmh.annotations.Benchmark;
+
+import java.util.List;
+
+/**
+ * Benchmark of reading and joining the XML and CSV files
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+public class ParseBenchmark extends BenchmarkDefaults {
+
+    @Benchmark
+    public List<Car> parse(CarDataState data) throws Exception {
+        return CarParser.parse(data.xmlFile, data.csvFile);
+    }
+}
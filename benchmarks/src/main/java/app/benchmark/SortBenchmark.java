@@ -0,0 +1,32 @@
+package app.benchmark;
+
+import app.constant.AppConstant;
+import app.model.Car;
+import app.service.CarSorter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmark of every sort option, each invocation sorts a fresh copy of the parsed cars
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+@State(Scope.Benchmark)
+public class SortBenchmark extends BenchmarkDefaults {
+
+    @Param({AppConstant.SORTER_YEAR, AppConstant.SORTER_PRICE, AppConstant.SORTER_SUV_EUR,
+            AppConstant.SORTER_SEDAN_JPY, AppConstant.SORTER_TRUCK_USD})
+    public String sortOption;
+
+    @Benchmark
+    public List<Car> sort(CarDataState data) {
+        List<Car> cars = new ArrayList<>(data.parsedCars);
+        CarSorter.sort(cars, sortOption);
+        return cars;
+    }
+}
@@ -0,0 +1,123 @@
+package app.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark of one whole run of the CLI as a new process on a small file, where the start of the
+ * JVM and the loading of Jackson and StAX take most of the time. Every mode runs the same query:
+ * <ul>
+ * <li>jar: java -jar target/car-cli-1.0.0.jar, the fat jar as it is</li>
+ * <li>cds: target/car-cli, the fat jar with the AppCDS archive of `mvn package -Pcds`</li>
+ * <li>native: target/car-cli-native, the GraalVM image of `mvn package -Pnative`</li>
+ * </ul>
+ * Build the modes first; the car-cli folder is taken from -Dcarcli.home (default: ..). Run with
+ * <code>java -jar benchmarks/target/benchmarks.jar StartupBenchmark -jvmArgs -Dcarcli.home=.</code> or pick
+ * modes with -p mode=jar,cds
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 30)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+
+    @Param({"jar", "cds", "native"})
+    public String mode;
+
+    @Param({"1000"})
+    public int cars;
+
+    private Path directory;
+    private List<String> command;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Path home = Paths.get(System.getProperty("carcli.home", "..")).toAbsolutePath().normalize();
+        Path target = home.resolve("target");
+        command = new ArrayList<>();
+        switch (mode) {
+            case "jar":
+                command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+                command.add("-jar");
+                command.add(existing(target.resolve("car-cli-1.0.0.jar"), "mvn package").toString());
+                break;
+            case "cds":
+                command.add(existing(target.resolve("car-cli"), "mvn package -Pcds").toString());
+                break;
+            case "native":
+                command.add(existing(target.resolve("car-cli-native"), "mvn package -Pnative").toString());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown mode " + mode + ", allowed: jar, cds, native");
+        }
+
+        directory = Files.createTempDirectory("car-startup-");
+        CarDataGenerator.generate(directory, cars, 42L);
+        command.add("--xml");
+        command.add(directory.resolve(CarDataGenerator.XML_FILE_NAME).toString());
+        command.add("--csv");
+        command.add(directory.resolve(CarDataGenerator.CSV_FILE_NAME).toString());
+        command.add("--sort");
+        command.add("price");
+        command.add("--output");
+        command.add("json");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public int run() throws Exception {
+        Process process = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        // Answer the "process another file" prompt so the run ends
+        try (OutputStream in = process.getOutputStream()) {
+            in.write("no\n".getBytes(StandardCharsets.US_ASCII));
+        }
+        int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            throw new IllegalStateException(String.join(" ", command) + " exited with " + exitCode);
+        }
+        return exitCode;
+    }
+
+    private static Path existing(Path path, String build) {
+        if (!Files.isRegularFile(path)) {
+            throw new IllegalStateException(path + " does not exist, build it with `" + build + "`");
+        }
+        return path;
+    }
+}
@@ -1,18 +1,41 @@
 package app.cli;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Paths;
 import java.time.LocalDate;
-import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 import app.constant.AppConstant;
+import app.model.BatchJob;
 import app.model.Car;
+import app.model.CarTable;
 import app.output.OutputFormatter;
+import app.output.TableWriter;
+import app.server.CarServer;
+import app.server.DatasetWatcher;
+import app.service.BatchRunner;
+import app.service.CarAggregator;
 import app.service.CarFilter;
 import app.service.CarParser;
+import app.service.CarSnapshot;
 import app.service.CarSorter;
+import app.service.Compression;
+import app.service.CurrencyConverter;
+import app.service.IncrementalCarLoader;
+import app.service.ModelBrandTable;
+import app.service.PipelineStats;
+import app.service.ResultCache;
+import app.service.SourceFiles;
+import app.service.WhereExpression;
 
 /**
  * The main class
@@ -29,13 +52,31 @@ public class CarApp {
 
         System.out.println("");
 
+        // Lives across the runs of the loop, so repeating a query is answered from it
+        ResultCache cache = null;
+
         while (true) {
             String xmlFile = null;
             String csvFile = null;
             String filterType = null;
             String filterValue = null;
+            String whereExpression = null;
             String sortOption = null;
             String outputFormat = "table";
+            int threads = 1;
+            Integer limit = null;
+            Long sortMemoryMb = null;
+            String snapshotFile = null;
+            Integer servePort = null;
+            boolean watch = false;
+            String modelsFile = null;
+            String ratesFile = null;
+            String statsFormat = null;
+            String compressCodec = null;
+            String cacheDir = null;
+            Long cacheMemoryMb = null;
+            String batchFile = null;
+            List<String> aggregateGroups = null;
 
             if (args.length == 0) {
                 // Interactive mode with file existence check
@@ -84,9 +125,9 @@ public class CarApp {
                 if (sortOption.isEmpty()) sortOption = null;
 
                 outputFormat = promptAndValidate(scanner,
-                        "Enter output format (table / json / xml) [default: table]: ",
-                        s -> s.isEmpty() || s.matches("table|json|xml"),
-                        "Invalid output format. Allowed: table, json, xml.");
+                        "Enter output format (table / table-auto / json / xml) [default: table]: ",
+                        s -> s.isEmpty() || s.matches("table|table-auto|json|xml"),
+                        "Invalid output format. Allowed: table, table-auto, json, xml.");
                 if (outputFormat.isEmpty()) outputFormat = "table";
 
                 System.out.println();
@@ -106,12 +147,104 @@ public class CarApp {
                             filterType = args[++i];
                             filterValue = args[++i];
                             break;
+                        case AppConstant.OPTION_LIMIT_PARAM:
+                            String limitValue = args[++i];
+                            if (!limitValue.matches("\\d+")) {
+                                System.err.println("Invalid limit " + limitValue + ", it must be a number.");
+                                printUsage();
+                                return;
+                            }
+                            limit = Integer.parseInt(limitValue);
+                            break;
+                        case AppConstant.OPTION_SORT_MEMORY_PARAM:
+                            String sortMemoryValue = args[++i];
+                            if (!sortMemoryValue.matches("\\d+") || Long.parseLong(sortMemoryValue) < 1) {
+                                System.err.println("Invalid sort memory " + sortMemoryValue + ", it must be a positive number of MB.");
+                                printUsage();
+                                return;
+                            }
+                            sortMemoryMb = Long.parseLong(sortMemoryValue);
+                            break;
+                        case AppConstant.OPTION_SERVE_PARAM:
+                            String portValue = args[++i];
+                            if (!portValue.matches("\\d{1,5}") || Integer.parseInt(portValue) > 65535) {
+                                System.err.println("Invalid port " + portValue + ", it must be a number up to 65535.");
+                                printUsage();
+                                return;
+                            }
+                            servePort = Integer.parseInt(portValue);
+                            break;
+                        case AppConstant.OPTION_MODELS_PARAM:
+                            modelsFile = args[++i];
+                            break;
+                        case AppConstant.OPTION_RATES_PARAM:
+                            ratesFile = args[++i];
+                            break;
+                        case AppConstant.OPTION_AGGREGATE_PARAM:
+                            try {
+                                aggregateGroups = CarAggregator.parseGroups(args[++i]);
+                            } catch (IllegalArgumentException e) {
+                                System.err.println("Invalid " + AppConstant.OPTION_AGGREGATE_PARAM + ": " + e.getMessage());
+                                printUsage();
+                                return;
+                            }
+                            break;
+                        case AppConstant.OPTION_BATCH_PARAM:
+                            batchFile = args[++i];
+                            break;
+                        case AppConstant.OPTION_COMPRESS_PARAM:
+                            compressCodec = args[++i].toLowerCase();
+                            if (!Compression.isCodec(compressCodec)) {
+                                System.err.println("Invalid codec " + compressCodec + ", allowed: gzip, zstd.");
+                                printUsage();
+                                return;
+                            }
+                            break;
+                        case AppConstant.OPTION_STATS_PARAM:
+                            statsFormat = args[++i];
+                            if (!statsFormat.equalsIgnoreCase(PipelineStats.FORMAT_TEXT)
+                                    && !statsFormat.equalsIgnoreCase(PipelineStats.FORMAT_JSON)) {
+                                System.err.println("Invalid stats format " + statsFormat + ", allowed: text, json.");
+                                printUsage();
+                                return;
+                            }
+                            break;
+                        case AppConstant.OPTION_WATCH_PARAM:
+                            watch = true;
+                            break;
+                        case AppConstant.OPTION_SNAPSHOT_PARAM:
+                            snapshotFile = args[++i];
+                            break;
+                        case AppConstant.OPTION_CACHE_DIR_PARAM:
+                            cacheDir = args[++i];
+                            break;
+                        case AppConstant.OPTION_CACHE_MEMORY_PARAM:
+                            String cacheMemoryValue = args[++i];
+                            if (!cacheMemoryValue.matches("\\d+")) {
+                                System.err.println("Invalid cache memory " + cacheMemoryValue + ", it must be a number of MB, 0 to keep nothing in memory.");
+                                printUsage();
+                                return;
+                            }
+                            cacheMemoryMb = Long.parseLong(cacheMemoryValue);
+                            break;
+                        case AppConstant.OPTION_WHERE_PARAM:
+                            whereExpression = args[++i];
+                            break;
                         case AppConstant.OPTION_SORT_PARAM:
                             sortOption = args[++i];
                             break;
                         case AppConstant.OPTION_OUTPUT_PARAM:
                             outputFormat = args[++i];
                             break;
+                        case AppConstant.OPTION_THREADS_PARAM:
+                            String threadsValue = args[++i];
+                            if (!threadsValue.matches("\\d+") || Integer.parseInt(threadsValue) < 1) {
+                                System.err.println("Invalid thread count " + threadsValue + ", it must be a positive number.");
+                                printUsage();
+                                return;
+                            }
+                            threads = Integer.parseInt(threadsValue);
+                            break;
                         default:
                             System.err.println("Unknown argument " + args[i]);
                             printUsage();
@@ -126,23 +259,211 @@ public class CarApp {
                 continue;
             }
 
+            List<String> xmlFiles;
+            List<String> csvFiles;
             try {
-                List<Car> cars = CarParser.parse(xmlFile, csvFile);
+                xmlFiles = SourceFiles.resolve(xmlFile, ".xml");
+                csvFiles = SourceFiles.resolve(csvFile, ".csv");
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                printUsage();
+                return;
+            }
+
+            boolean manyFiles = xmlFiles.size() > 1 || csvFiles.size() > 1;
+            if (manyFiles && snapshotFile != null) {
+                System.err.println(AppConstant.OPTION_SNAPSHOT_PARAM + " only works with a single --xml and --csv file");
+                printUsage();
+                return;
+            }
+
+            if (manyFiles && watch) {
+                System.err.println(AppConstant.OPTION_WATCH_PARAM + " only works with a single --xml and --csv file");
+                printUsage();
+                return;
+            }
 
-                List<Car> processedCars = new ArrayList<>(cars);
-                if (filterType != null) {
-                    processedCars = CarFilter.filter(processedCars, filterType, filterValue);
+            try {
+                if (watch && (Compression.isCompressed(xmlFiles.get(0)) || Compression.isCompressed(csvFiles.get(0)))) {
+                    System.err.println(AppConstant.OPTION_WATCH_PARAM + " does not work with compressed files");
+                    printUsage();
+                    return;
                 }
+            } catch (IOException e) {
+                System.err.println("An error occurred: " + e.getMessage());
+                return;
+            }
+
+            if (watch && servePort == null) {
+                System.err.println(AppConstant.OPTION_WATCH_PARAM + " only works together with " + AppConstant.OPTION_SERVE_PARAM);
+                printUsage();
+                return;
+            }
+
+            if (ratesFile != null && servePort != null) {
+                System.err.println(AppConstant.OPTION_RATES_PARAM + " does not work together with " + AppConstant.OPTION_SERVE_PARAM);
+                printUsage();
+                return;
+            }
 
-                if (sortOption != null) {
-                    CarSorter.sort(processedCars, sortOption);
+            if (batchFile != null && servePort != null) {
+                System.err.println(AppConstant.OPTION_BATCH_PARAM + " does not work together with " + AppConstant.OPTION_SERVE_PARAM);
+                printUsage();
+                return;
+            }
+
+            if (statsFormat != null && servePort != null) {
+                System.err.println(AppConstant.OPTION_STATS_PARAM + " does not work together with " + AppConstant.OPTION_SERVE_PARAM);
+                printUsage();
+                return;
+            }
+
+            if (servePort != null) {
+                // Server mode: load once, then the server threads keep the JVM running
+                try {
+                    ModelBrandTable models = loadModels(modelsFile);
+                    // --snapshot and --watch have a single file, also when it is named by a directory or glob
+                    String servedXml = xmlFiles.get(0);
+                    String servedCsv = csvFiles.get(0);
+                    CarTable table = snapshotFile != null
+                            ? CarSnapshot.load(servedXml, servedCsv, models, snapshotFile, threads)
+                            : CarParser.parseTable(xmlFiles, csvFiles, threads, models);
+                    CarServer server = CarServer.start(table, servePort);
+                    Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+                    if (watch) {
+                        IncrementalCarLoader loader = new IncrementalCarLoader(servedXml, servedCsv, threads, models, table);
+                        DatasetWatcher.start(loader, server, servedXml, servedCsv);
+                    }
+                    System.out.println("Serving " + table.size() + " cars on http://localhost:" + server.getPort() + CarServer.CARS_PATH);
+                } catch (Exception e) {
+                    System.err.println("An error occurred: " + e.getMessage());
+                    e.printStackTrace();
                 }
+                return;
+            }
 
-                OutputFormatter.formatAndPrint(processedCars, outputFormat);
+            if (batchFile != null) {
+                // Batch mode: every job of the file in one pass over the cars, then exit
+                try {
+                    List<BatchJob> jobs = BatchRunner.readJobs(batchFile);
+                    long start = System.nanoTime();
+                    try (Stream<Car> cars = openCars(xmlFiles, csvFiles, threads, loadModels(modelsFile), snapshotFile)) {
+                        Stream<Car> source = cars;
+                        if (ratesFile != null) {
+                            source = CurrencyConverter.load(ratesFile).fillMissing(source, batchCurrencies(jobs));
+                        }
+                        int failed = 0;
+                        for (BatchRunner.Result result : BatchRunner.run(source, jobs)) {
+                            if (result.getError() != null) {
+                                failed++;
+                                System.err.println("Failed " + result.getJob().getFile() + ": " + result.getError().getMessage());
+                            } else {
+                                System.out.println("Wrote " + result.getCars() + " cars to " + result.getJob().getFile() + " in "
+                                        + TimeUnit.NANOSECONDS.toMillis(result.getNanos()) + " ms");
+                            }
+                        }
+                        System.out.println("Ran " + jobs.size() + " jobs (" + failed + " failed) in "
+                                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+                    }
+                } catch (Exception e) {
+                    System.err.println("An error occurred: " + e.getMessage());
+                    e.printStackTrace();
+                }
+                return;
+            }
 
-            } catch (Exception e) {
-                System.err.println("An error occurred: " + e.getMessage());
-                e.printStackTrace();
+            boolean repeatedRun = cache != null;
+            if (cache == null) {
+                cache = new ResultCache(cacheMemoryMb != null ? cacheMemoryMb * 1024 * 1024 : ResultCache.defaultMemoryBudget(),
+                        cacheDir != null ? Paths.get(cacheDir) : null);
+            }
+            PipelineStats stats = new PipelineStats(statsFormat != null || PipelineStats.isRecording());
+            String datasetKey = null;
+            String resultKey = null;
+            if (!stats.isEnabled()) {
+                // A run measured with --stats or Flight Recorder always does the work
+                try {
+                    datasetKey = cache.datasetKey(xmlFiles, csvFiles, modelsFile);
+                    resultKey = cache.resultKey(datasetKey, ratesFile, filterType, filterValue, whereExpression,
+                            sortOption, limit, aggregateGroups, outputFormat, compressCodec);
+                } catch (IOException e) {
+                    // A file that cannot be read fails below with its own message
+                }
+            }
+
+            boolean cached = false;
+            try {
+                cached = resultKey != null && cache.writeResult(resultKey, System.out);
+            } catch (IOException e) {
+                System.err.println("Could not read the cached result: " + e.getMessage());
+            }
+
+            if (!cached) {
+                long inputBytes = inputBytes(xmlFiles, csvFiles, snapshotFile);
+                // Collecting the cars in a table holds back the output until the files are read, so it is
+                // only done once the session runs again and may reuse them. A snapshot is a cache of its
+                // own, and files larger than the budget are streamed as before
+                String tableKey = repeatedRun && snapshotFile == null && inputBytes <= cache.getMemoryBudget() ? datasetKey : null;
+                ResultCache.Capture capture = resultKey != null ? cache.capture(System.out) : null;
+                OutputStream sink = capture != null ? capture : System.out;
+                try (Stream<Car> cars = stats.measureSource("parse", inputBytes,
+                        openingCars(xmlFiles, csvFiles, threads, modelsFile, snapshotFile, cache, tableKey))) {
+                    Stream<Car> processedCars = cars;
+                    CurrencyConverter converter = ratesFile != null ? CurrencyConverter.load(ratesFile) : null;
+                    if (converter != null) {
+                        // Derive only the prices the filters and the sort compare, before they run
+                        processedCars = stats.measure("rates", converter.fillMissing(processedCars, queryCurrencies(filterType, whereExpression, sortOption)));
+                    }
+
+                    if (filterType != null) {
+                        processedCars = stats.measure("filter", CarFilter.filter(processedCars, filterType, filterValue));
+                    }
+
+                    if (whereExpression != null) {
+                        processedCars = stats.measure("where", CarFilter.where(processedCars, whereExpression));
+                    }
+
+                    String format = outputFormat;
+                    if (aggregateGroups != null) {
+                        if (converter != null) {
+                            // Every group gets the currencies of the table, also for cars without them
+                            processedCars = stats.measure("rates", converter.fillMissing(processedCars, TableWriter.priceCurrencies()));
+                        }
+                        Stream<Car> groupedCars = threads > 1 ? processedCars.parallel() : processedCars;
+                        List<String> groups = aggregateGroups;
+                        String codec = compressCodec;
+                        stats.measureOutput("aggregate", sink, out -> Compression.write(out, codec,
+                                target -> OutputFormatter.formatAndWriteStats(CarAggregator.aggregate(groupedCars, groups), groups, format, target)));
+                    } else {
+                        if (limit != null) {
+                            processedCars = stats.measure(sortOption != null ? "sort" : "limit", CarSorter.sort(processedCars, sortOption, limit));
+                        } else if (sortOption != null && sortMemoryMb != null) {
+                            processedCars = stats.measure("sort", CarSorter.sortExternal(processedCars, sortOption, sortMemoryMb * 1024 * 1024));
+                        } else if (sortOption != null) {
+                            processedCars = stats.measure("sort", CarSorter.sort(processedCars, sortOption));
+                        }
+
+                        if (converter != null && (outputFormat.equalsIgnoreCase(AppConstant.OUTPUT_TABLE_PARAM)
+                                || outputFormat.equalsIgnoreCase(AppConstant.OUTPUT_TABLE_AUTO_PARAM))) {
+                            // The table has a column per currency, only the cars that are printed need them
+                            processedCars = stats.measure("table rates", converter.fillMissing(processedCars, TableWriter.priceCurrencies()));
+                        }
+
+                        try (Stream<Car> outputCars = processedCars) {
+                            String codec = compressCodec;
+                            stats.measureOutput("output", sink, out -> Compression.write(out, codec,
+                                    target -> OutputFormatter.formatAndWrite(outputCars, format, target)));
+                        }
+                    }
+                    if (capture != null) {
+                        cache.putResult(resultKey, capture);
+                    }
+                    stats.report(statsFormat, System.err);
+
+                } catch (Exception e) {
+                    System.err.println("An error occurred: " + e.getMessage());
+                    e.printStackTrace();
+                }
             }
 
             if (!promptYesNo(scanner, "\nDo you want to process another file? (yes/no): ")) {
@@ -154,6 +475,84 @@ public class CarApp {
         }
     }
 
+    private static ModelBrandTable loadModels(String modelsFile) throws IOException {
+        return modelsFile != null ? ModelBrandTable.load(modelsFile) : ModelBrandTable.defaults();
+    }
+
+    /**
+     * @return the currencies whose prices the filter, the where expression and the sort compare
+     */
+    private static Set<String> queryCurrencies(String filterType, String whereExpression, String sortOption) {
+        Set<String> currencies = new LinkedHashSet<>();
+        if (AppConstant.FILTER_BRAND_PRICE.equalsIgnoreCase(filterType)) {
+            currencies.add(CurrencyConverter.BASE_CURRENCY);
+        }
+        if (whereExpression != null) {
+            currencies.addAll(WhereExpression.currencies(whereExpression));
+        }
+        String sortCurrency = CarSorter.sortCurrency(sortOption);
+        if (sortCurrency != null) {
+            currencies.add(sortCurrency);
+        }
+        return currencies;
+    }
+
+    /**
+     * @return the currencies any job of the batch compares or prints in a table
+     */
+    private static Set<String> batchCurrencies(List<BatchJob> jobs) {
+        Set<String> currencies = new LinkedHashSet<>();
+        for (BatchJob job : jobs) {
+            currencies.addAll(queryCurrencies(job.getFilter(), job.getWhere(), job.getSort()));
+            if (AppConstant.OUTPUT_TABLE_PARAM.equalsIgnoreCase(job.getOutput())
+                    || AppConstant.OUTPUT_TABLE_AUTO_PARAM.equalsIgnoreCase(job.getOutput())) {
+                currencies.addAll(TableWriter.priceCurrencies());
+            }
+        }
+        return currencies;
+    }
+
+    /**
+     * @return the bytes the parse stage reads: the xml and csv files, and the snapshot file when there is one
+     */
+    private static long inputBytes(List<String> xmlFiles, List<String> csvFiles, String snapshotFile) {
+        long bytes = SourceFiles.size(xmlFiles) + SourceFiles.size(csvFiles);
+        if (snapshotFile != null) {
+            bytes += new File(snapshotFile).length();
+        }
+        return bytes;
+    }
+
+    /**
+     * @param tableKey the cache key of the parsed cars, or null to stream them from the files
+     */
+    private static Callable<Stream<Car>> openingCars(List<String> xmlFiles, List<String> csvFiles, int threads,
+                                                     String modelsFile, String snapshotFile, ResultCache cache,
+                                                     String tableKey) {
+        return () -> {
+            if (tableKey == null) {
+                return openCars(xmlFiles, csvFiles, threads, loadModels(modelsFile), snapshotFile);
+            }
+            CarTable table = cache.getDataset(tableKey);
+            if (table == null) {
+                try (Stream<Car> cars = openCars(xmlFiles, csvFiles, threads, loadModels(modelsFile), snapshotFile)) {
+                    table = CarTable.of(cars);
+                }
+                cache.putDataset(tableKey, table);
+            }
+            return table.stream();
+        };
+    }
+
+    private static Stream<Car> openCars(List<String> xmlFiles, List<String> csvFiles, int threads, ModelBrandTable models,
+                                        String snapshotFile) throws Exception {
+        if (snapshotFile != null) {
+            // A snapshot is only taken with a single xml and csv file
+            return CarSnapshot.load(xmlFiles.get(0), csvFiles.get(0), models, snapshotFile, threads).stream();
+        }
+        return CarParser.stream(xmlFiles, csvFiles, threads, models);
+    }
+
     private static String promptFilePath(Scanner scanner, String prompt) {
         return promptAndValidate(scanner, prompt,
                 s -> {
@@ -189,13 +588,31 @@ public class CarApp {
     private static void printUsage() {
         System.out.println("Usage for direct command: java -jar <filename>.jar --xml <xmlFile> --csv <csvFile> [options]");
         System.out.println("Options:");
-        System.out.println("  " + AppConstant.OPTION_XML_PARAM + " <path>       Path to the carsType.xml file.");
-        System.out.println("  " + AppConstant.OPTION_CSV_PARAM + " <path>       Path to the CarsBrand.csv file.");
+        System.out.println("  " + AppConstant.OPTION_XML_PARAM + " <path>       Path to the carsType.xml file, or a directory or glob of xml files.");
+        System.out.println("  " + AppConstant.OPTION_CSV_PARAM + " <path>       Path to the CarsBrand.csv file, or a directory or glob of csv files.");
         System.out.println("  " + AppConstant.OPTION_FILTER_PARAM + " <type> <value>");
         System.out.println("                     'brand-price' <brand>,<minPrice>,<maxPrice>");
         System.out.println("                     'brand-release' <brand>,<yyyy-MM-dd|yyyy,dd,MM>");
+        System.out.println("  " + AppConstant.OPTION_WHERE_PARAM + " <expression>");
+        System.out.println("                     e.g. \"brand in (Toyota,Honda) and price.EUR between 20000 and 40000 and release >= 2023-01-01\"");
+        System.out.println("                     fields: brand, type, model, release, price, price.<currency>");
         System.out.println("  " + AppConstant.OPTION_SORT_PARAM + " <option>    'year', 'price', 'suv-eur', 'sedan-jpy', 'truck-usd'");
-        System.out.println("  " + AppConstant.OPTION_OUTPUT_PARAM + " <format>  'table', 'json', 'xml' (default: table)");
+        System.out.println("  " + AppConstant.OPTION_SORT_MEMORY_PARAM + " <MB>   Sort on disk, keeping at most <MB> of cars in memory");
+        System.out.println("  " + AppConstant.OPTION_LIMIT_PARAM + " <count>     Keep only the first <count> cars (top <count> when sorted)");
+        System.out.println("  " + AppConstant.OPTION_OUTPUT_PARAM + " <format>  'table', 'table-auto', 'json', 'xml' (default: table)");
+        System.out.println("                     'table-auto' sizes every column to its longest value");
+        System.out.println("  " + AppConstant.OPTION_THREADS_PARAM + " <count>   Threads used to parse the XML file (default: 1)");
+        System.out.println("  " + AppConstant.OPTION_MODELS_PARAM + " <path>    CSV file of Model,Brand lines used to find the brand of each model");
+        System.out.println("  " + AppConstant.OPTION_RATES_PARAM + " <path>     CSV file of Date,Currency,Rate lines (units per USD) used to derive missing prices");
+        System.out.println("  " + AppConstant.OPTION_STATS_PARAM + " <format>   'text' or 'json', print the time, cars, bytes and allocations of every stage to stderr");
+        System.out.println("  " + AppConstant.OPTION_AGGREGATE_PARAM + " <groups> Price count, sum, min, max, mean and p50/p90/p99 per currency, grouped by brand,type,year");
+        System.out.println("  " + AppConstant.OPTION_BATCH_PARAM + " <path>     Run every query of a JSON jobs file in one pass, each into its own file");
+        System.out.println("  " + AppConstant.OPTION_COMPRESS_PARAM + " <codec>  'gzip' or 'zstd', compress the output");
+        System.out.println("  " + AppConstant.OPTION_CACHE_MEMORY_PARAM + " <MB>  Memory for parsed files and results kept between runs (default: 1/4 of the heap)");
+        System.out.println("  " + AppConstant.OPTION_CACHE_DIR_PARAM + " <path>  Also keep the results in this directory, across sessions");
+        System.out.println("  " + AppConstant.OPTION_SERVE_PARAM + " <port>     Load the cars once and answer GET /cars queries on localhost:<port>");
+        System.out.println("  " + AppConstant.OPTION_WATCH_PARAM + "            With --serve, apply changes of the XML and CSV file while serving");
+        System.out.println("  " + AppConstant.OPTION_SNAPSHOT_PARAM + " <path>  Load the parsed cars from a snapshot file, rebuilt when the XML or CSV file changes");
     }
 
     public static void printBanner() {
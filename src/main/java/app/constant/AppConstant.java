@@ -12,9 +12,25 @@ public class AppConstant {
     public static final String OPTION_FILTER_PARAM = "--filter";
     public static final String OPTION_SORT_PARAM = "--sort";
     public static final String OPTION_OUTPUT_PARAM = "--output";
+    public static final String OPTION_THREADS_PARAM = "--threads";
+    public static final String OPTION_WHERE_PARAM = "--where";
+    public static final String OPTION_LIMIT_PARAM = "--limit";
+    public static final String OPTION_SORT_MEMORY_PARAM = "--sort-memory";
+    public static final String OPTION_SNAPSHOT_PARAM = "--snapshot";
+    public static final String OPTION_MODELS_PARAM = "--models";
+    public static final String OPTION_RATES_PARAM = "--rates";
+    public static final String OPTION_STATS_PARAM = "--stats";
+    public static final String OPTION_BATCH_PARAM = "--batch";
+    public static final String OPTION_AGGREGATE_PARAM = "--aggregate";
+    public static final String OPTION_COMPRESS_PARAM = "--compress";
+    public static final String OPTION_CACHE_MEMORY_PARAM = "--cache-memory";
+    public static final String OPTION_CACHE_DIR_PARAM = "--cache-dir";
+    public static final String OPTION_SERVE_PARAM = "--serve";
+    public static final String OPTION_WATCH_PARAM = "--watch";
 
     public static final String OUTPUT_JSON_PARAM = "json";
     public static final String OUTPUT_TABLE_PARAM = "table";
+    public static final String OUTPUT_TABLE_AUTO_PARAM = "table-auto";
     public static final String OUTPUT_XML_PARAM = "xml";
 
     public static final String FILTER_BRAND_PRICE = "brand-price";
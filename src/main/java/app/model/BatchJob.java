@@ -0,0 +1,100 @@
+package app.model;
+
+/**
+ * This class used for BatchJob modeling, one query of a --batch file with the same options as
+ * the command line and the file its cars are written to
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+public class BatchJob {
+
+    private String filter;
+    private String value;
+    private String where;
+    private String sort;
+    private Integer limit;
+    private Long sortMemory;
+    private String output = "table";
+    private String file;
+
+    public String getFilter() {
+        return filter;
+    }
+
+    public void setFilter(String filter) {
+        this.filter = filter;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public void setValue(String value) {
+        this.value = value;
+    }
+
+    public String getWhere() {
+        return where;
+    }
+
+    public void setWhere(String where) {
+        this.where = where;
+    }
+
+    public String getSort() {
+        return sort;
+    }
+
+    public void setSort(String sort) {
+        this.sort = sort;
+    }
+
+    public Integer getLimit() {
+        return limit;
+    }
+
+    public void setLimit(Integer limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * @return the MB of cars the sort keeps in memory before it spills to disk, null to sort in memory
+     */
+    public Long getSortMemory() {
+        return sortMemory;
+    }
+
+    public void setSortMemory(Long sortMemory) {
+        this.sortMemory = sortMemory;
+    }
+
+    public String getOutput() {
+        return output;
+    }
+
+    public void setOutput(String output) {
+        this.output = output;
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public void setFile(String file) {
+        this.file = file;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchJob{" +
+                "filter='" + filter + '\'' +
+                ", value='" + value + '\'' +
+                ", where='" + where + '\'' +
+                ", sort='" + sort + '\'' +
+                ", limit=" + limit +
+                ", sortMemory=" + sortMemory +
+                ", output='" + output + '\'' +
+                ", file='" + file + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,390 @@
+package app.model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * This class used for holding many cars column by column. Brand, type and model are dictionary
+ * encoded, the release date is kept as epoch day and every currency has its own price column with
+ * a bitmap telling which rows have a price. A {@link Car} is only created when a row is asked for.
+ *
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+public class CarTable {
+
+    /** Epoch day stored for a car without release date */
+    public static final int NO_DATE = Integer.MIN_VALUE;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Dictionary brands = new Dictionary();
+    private final Dictionary types = new Dictionary();
+    private final Dictionary models = new Dictionary();
+    private final Map<String, Integer> currencyIndex = new HashMap<>();
+    private final List<String> currencies = new ArrayList<>();
+
+    private int size;
+    private int[] brandCodes = new int[INITIAL_CAPACITY];
+    private int[] typeCodes = new int[INITIAL_CAPACITY];
+    private int[] modelCodes = new int[INITIAL_CAPACITY];
+    private int[] releaseDays = new int[INITIAL_CAPACITY];
+    private double[][] prices = new double[0][];
+    private long[][] pricePresent = new long[0][];
+
+    /**
+     * Collect the cars of a stream into a new table
+     *
+     * @param cars
+     * @return CarTable
+     */
+    public static CarTable of(Stream<Car> cars) {
+        CarTable table = new CarTable();
+        cars.forEachOrdered(table::add);
+        return table;
+    }
+
+    /**
+     * Create a table straight from its columns, without going through {@link Car} objects. Every
+     * int column and every price column must have exactly one value per row, and the bitmaps one
+     * bit per row. The arrays are used as they are, not copied.
+     *
+     * @param brands the brand dictionary, the brand codes index into it
+     * @param types the type dictionary
+     * @param models the model dictionary
+     * @param brandCodes
+     * @param typeCodes
+     * @param modelCodes
+     * @param releaseDays epoch days, {@link #NO_DATE} for a car without release date
+     * @param currencies the currency of each price column
+     * @param prices one price column per currency
+     * @param pricePresent one bitmap per currency telling which rows have a price
+     * @return CarTable
+     */
+    public static CarTable ofColumns(List<String> brands, List<String> types, List<String> models,
+                                     int[] brandCodes, int[] typeCodes, int[] modelCodes, int[] releaseDays,
+                                     List<String> currencies, double[][] prices, long[][] pricePresent) {
+        int size = brandCodes.length;
+        if (typeCodes.length != size || modelCodes.length != size || releaseDays.length != size
+                || prices.length != currencies.size() || pricePresent.length != currencies.size()) {
+            throw new IllegalArgumentException("Columns of different lengths");
+        }
+        CarTable table = new CarTable();
+        brands.forEach(table.brands::encode);
+        types.forEach(table.types::encode);
+        models.forEach(table.models::encode);
+        for (String currency : currencies) {
+            table.currencyIndex.put(currency, table.currencies.size());
+            table.currencies.add(currency);
+        }
+        for (int column = 0; column < prices.length; column++) {
+            if (prices[column].length != size || pricePresent[column].length != bitmapLength(size)) {
+                throw new IllegalArgumentException("Price column " + currencies.get(column) + " has the wrong length");
+            }
+        }
+        table.size = size;
+        table.brandCodes = brandCodes;
+        table.typeCodes = typeCodes;
+        table.modelCodes = modelCodes;
+        table.releaseDays = releaseDays;
+        table.prices = prices;
+        table.pricePresent = pricePresent;
+        return table;
+    }
+
+    /**
+     * Append a car as the last row
+     *
+     * @param car
+     */
+    public void add(Car car) {
+        ensureCapacity(size + 1);
+        int row = size++;
+        brandCodes[row] = brands.encode(car.getBrand());
+        typeCodes[row] = types.encode(car.getType());
+        modelCodes[row] = models.encode(car.getModel());
+        releaseDays[row] = car.getReleaseDate() != null ? (int) car.getReleaseDate().toEpochDay() : NO_DATE;
+        for (Map.Entry<String, Double> price : car.getPrices().entrySet()) {
+            if (price.getValue() == null) continue;
+            int column = currencyColumn(price.getKey());
+            prices[column][row] = price.getValue();
+            pricePresent[column][row >>> 6] |= 1L << row;
+        }
+    }
+
+    /**
+     * Copy the table, changing the copy does not change this table
+     *
+     * @return CarTable
+     */
+    public CarTable copy() {
+        CarTable copy = new CarTable();
+        brands.values.forEach(copy.brands::encode);
+        types.values.forEach(copy.types::encode);
+        models.values.forEach(copy.models::encode);
+        copy.currencyIndex.putAll(currencyIndex);
+        copy.currencies.addAll(currencies);
+        copy.size = size;
+        copy.brandCodes = Arrays.copyOf(brandCodes, size);
+        copy.typeCodes = Arrays.copyOf(typeCodes, size);
+        copy.modelCodes = Arrays.copyOf(modelCodes, size);
+        copy.releaseDays = Arrays.copyOf(releaseDays, size);
+        copy.prices = new double[prices.length][];
+        copy.pricePresent = new long[pricePresent.length][];
+        for (int column = 0; column < prices.length; column++) {
+            copy.prices[column] = Arrays.copyOf(prices[column], size);
+            copy.pricePresent[column] = Arrays.copyOf(pricePresent[column], bitmapLength(size));
+        }
+        return copy;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String getBrand(int row) {
+        return brands.decode(brandCodes[row]);
+    }
+
+    public String getType(int row) {
+        return types.decode(typeCodes[row]);
+    }
+
+    public String getModel(int row) {
+        return models.decode(modelCodes[row]);
+    }
+
+    public LocalDate getReleaseDate(int row) {
+        return releaseDays[row] == NO_DATE ? null : LocalDate.ofEpochDay(releaseDays[row]);
+    }
+
+    /**
+     * @param row
+     * @return the release date as epoch day, or {@link #NO_DATE}
+     */
+    public int getReleaseDay(int row) {
+        return releaseDays[row];
+    }
+
+    /**
+     * @param row
+     * @param releaseDay epoch day, or {@link #NO_DATE}
+     */
+    public void setReleaseDay(int row, int releaseDay) {
+        if (row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+        releaseDays[row] = releaseDay;
+    }
+
+    public int getBrandCode(int row) {
+        return brandCodes[row];
+    }
+
+    public int getTypeCode(int row) {
+        return typeCodes[row];
+    }
+
+    public int getModelCode(int row) {
+        return modelCodes[row];
+    }
+
+    public Dictionary getBrands() {
+        return brands;
+    }
+
+    public Dictionary getTypes() {
+        return types;
+    }
+
+    public Dictionary getModels() {
+        return models;
+    }
+
+    /**
+     * @param currency
+     * @return the price column of the currency, or -1 when no car has that currency
+     */
+    public int getCurrencyColumn(String currency) {
+        Integer column = currencyIndex.get(currency);
+        return column != null ? column : -1;
+    }
+
+    public List<String> getCurrencies() {
+        return currencies;
+    }
+
+    public boolean hasPrice(int row, int column) {
+        return column >= 0 && (pricePresent[column][row >>> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * @param row
+     * @param column
+     * @param defaultValue
+     * @return the price of the row in the currency column, or defaultValue when the row has none
+     */
+    public double getPrice(int row, int column, double defaultValue) {
+        return hasPrice(row, column) ? prices[column][row] : defaultValue;
+    }
+
+    /**
+     * Create the Car of a row, the car is a copy and changing it does not change the table
+     *
+     * @param row
+     * @return Car
+     */
+    public Car get(int row) {
+        Car car = new Car();
+        car.setBrand(getBrand(row));
+        car.setType(getType(row));
+        car.setModel(getModel(row));
+        car.setReleaseDate(getReleaseDate(row));
+        for (int column = 0; column < currencies.size(); column++) {
+            if (hasPrice(row, column)) {
+                car.getPrices().put(currencies.get(column), prices[column][row]);
+            }
+        }
+        return car;
+    }
+
+    /**
+     * @return the cars of every row, in row order
+     */
+    public Stream<Car> stream() {
+        return IntStream.range(0, size).mapToObj(this::get);
+    }
+
+    /**
+     * @param rows
+     * @return the cars of the given rows, in the order of the rows
+     */
+    public Stream<Car> stream(int[] rows) {
+        return Arrays.stream(rows).mapToObj(this::get);
+    }
+
+    /**
+     * @return an estimate of the heap the table takes in bytes, the columns at their capacity
+     *         plus the dictionaries
+     */
+    public long estimatedBytes() {
+        long capacity = brandCodes.length;
+        long bytes = 4 * capacity * Integer.BYTES;
+        bytes += prices.length * (capacity * Double.BYTES + (long) bitmapLength(brandCodes.length) * Long.BYTES);
+        return bytes + brands.estimatedBytes() + types.estimatedBytes() + models.estimatedBytes();
+    }
+
+    private int currencyColumn(String currency) {
+        Integer column = currencyIndex.get(currency);
+        if (column != null) {
+            return column;
+        }
+        int added = currencies.size();
+        currencies.add(currency);
+        currencyIndex.put(currency, added);
+        prices = Arrays.copyOf(prices, added + 1);
+        pricePresent = Arrays.copyOf(pricePresent, added + 1);
+        prices[added] = new double[brandCodes.length];
+        pricePresent[added] = new long[bitmapLength(brandCodes.length)];
+        return added;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= brandCodes.length) {
+            return;
+        }
+        int grown = Math.max(capacity, brandCodes.length + (brandCodes.length >> 1));
+        brandCodes = Arrays.copyOf(brandCodes, grown);
+        typeCodes = Arrays.copyOf(typeCodes, grown);
+        modelCodes = Arrays.copyOf(modelCodes, grown);
+        releaseDays = Arrays.copyOf(releaseDays, grown);
+        for (int column = 0; column < prices.length; column++) {
+            prices[column] = Arrays.copyOf(prices[column], grown);
+            pricePresent[column] = Arrays.copyOf(pricePresent[column], bitmapLength(grown));
+        }
+    }
+
+    private static int bitmapLength(int capacity) {
+        return (capacity + 63) >>> 6;
+    }
+
+    /**
+     * Maps every distinct String of a column to a small int code, null is code -1
+     */
+    public static class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int encode(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                values.add(value);
+                codes.put(value, code);
+            }
+            return code;
+        }
+
+        /**
+         * @param code
+         * @return the value of the code, null for -1
+         */
+        public String decode(int code) {
+            return code < 0 ? null : values.get(code);
+        }
+
+        /**
+         * @param value
+         * @return the code of the value, or -1 when it is not in the column
+         */
+        public int codeOf(String value) {
+            Integer code = value != null ? codes.get(value) : null;
+            return code != null ? code : -1;
+        }
+
+        /**
+         * Mark the codes whose value equals the given one ignoring case
+         *
+         * @param value
+         * @return array indexed by code, true for the matching codes
+         */
+        public boolean[] matchIgnoreCase(String value) {
+            boolean[] matches = new boolean[values.size()];
+            for (int code = 0; code < values.size(); code++) {
+                matches[code] = values.get(code).equalsIgnoreCase(value);
+            }
+            return matches;
+        }
+
+        public int size() {
+            return values.size();
+        }
+
+        /**
+         * @return the values in code order
+         */
+        public List<String> values() {
+            return Collections.unmodifiableList(values);
+        }
+
+        /**
+         * A String with its bytes and a map entry take about 100 bytes besides the characters
+         */
+        long estimatedBytes() {
+            long bytes = 0;
+            for (String value : values) {
+                bytes += 100 + value.length();
+            }
+            return bytes;
+        }
+    }
+}
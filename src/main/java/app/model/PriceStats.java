@@ -0,0 +1,145 @@
+package app.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * This class used for PriceStats modeling, the prices of one currency in one group of cars.
+ * The group fields that are not grouped by stay null
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonPropertyOrder({"brand", "type", "year", "currency", "count", "sum", "min", "max", "mean", "p50", "p90", "p99"})
+public class PriceStats {
+
+    private String brand;
+    private String type;
+    private Integer year;
+    private String currency;
+    private long count;
+    private double sum;
+    private double min;
+    private double max;
+    private double mean;
+    private double p50;
+    private double p90;
+    private double p99;
+
+    public String getBrand() {
+        return brand;
+    }
+
+    public void setBrand(String brand) {
+        this.brand = brand;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public Integer getYear() {
+        return year;
+    }
+
+    public void setYear(Integer year) {
+        this.year = year;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public void setSum(double sum) {
+        this.sum = sum;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public void setMin(double min) {
+        this.min = min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public void setMax(double max) {
+        this.max = max;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public void setMean(double mean) {
+        this.mean = mean;
+    }
+
+    /**
+     * @return the approximate median, within 1% of a price of the group
+     */
+    public double getP50() {
+        return p50;
+    }
+
+    public void setP50(double p50) {
+        this.p50 = p50;
+    }
+
+    public double getP90() {
+        return p90;
+    }
+
+    public void setP90(double p90) {
+        this.p90 = p90;
+    }
+
+    public double getP99() {
+        return p99;
+    }
+
+    public void setP99(double p99) {
+        this.p99 = p99;
+    }
+
+    @Override
+    public String toString() {
+        return "PriceStats{" +
+                "brand='" + brand + '\'' +
+                ", type='" + type + '\'' +
+                ", year=" + year +
+                ", currency='" + currency + '\'' +
+                ", count=" + count +
+                ", sum=" + sum +
+                ", min=" + min +
+                ", max=" + max +
+                ", mean=" + mean +
+                ", p50=" + p50 +
+                ", p90=" + p90 +
+                ", p99=" + p99 +
+                '}';
+    }
+}
@@ -2,14 +2,30 @@ package app.output;
 
 import app.constant.AppConstant;
 import app.model.Car;
+import app.model.PriceStats;
+import app.service.CarAggregator;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.fasterxml.jackson.dataformat.xml.ser.ToXmlGenerator;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
+import javax.xml.namespace.QName;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.time.format.DateTimeFormatter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Used for format the output
@@ -18,6 +34,14 @@ import java.util.List;
  */
 public class OutputFormatter {
 
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+    private static final QName XML_ROOT = new QName("ArrayList");
+    private static final String XML_ITEM = "item";
+
+    // Mappers are expensive to set up and ObjectWriters are thread safe, so both are built once
+    private static final ObjectWriter JSON_WRITER = configure(new ObjectMapper()).writer();
+    private static final ObjectWriter XML_WRITER = configure(new XmlMapper()).writer();
+
     /**
      * Format and print the output
      * 
@@ -25,72 +49,146 @@ public class OutputFormatter {
      * @param format
      */
     public static void formatAndPrint(List<Car> cars, String format) {
+        formatAndPrint(cars.stream(), format);
+    }
+
+    /**
+     * Format and print the output while the stream is being consumed
+     * 
+     * @param cars
+     * @param format
+     */
+    public static void formatAndPrint(Stream<Car> cars, String format) {
+        formatAndWrite(cars, format, System.out);
+    }
+
+    /**
+     * Format the output into a stream, one car at a time, so the whole output is never held
+     * in memory. The stream is flushed but not closed.
+     * 
+     * @param cars
+     * @param format
+     * @param out
+     */
+    public static void formatAndWrite(Stream<Car> cars, String format, OutputStream out) {
+        BufferedOutputStream buffered = new BufferedOutputStream(out, OUTPUT_BUFFER_SIZE);
+        PrintStream printer = new PrintStream(buffered, false);
         switch (format.toLowerCase()) {
             case AppConstant.OUTPUT_TABLE_PARAM:
-                printTable(cars);
+                TableWriter.write(cars, new OutputStreamWriter(buffered));
+                break;
+            case AppConstant.OUTPUT_TABLE_AUTO_PARAM:
+                TableWriter.writeAutoSized(cars, new OutputStreamWriter(buffered));
                 break;
             case AppConstant.OUTPUT_JSON_PARAM:
-                printJson(cars);
+                printJson(cars, printer);
+                printer.println();
                 break;
             case AppConstant.OUTPUT_XML_PARAM:
-                printXml(cars);
+                printXml(cars, printer);
+                printer.println();
                 break;
             default:
-                cars.forEach(System.out::println);
+                cars.forEachOrdered(printer::println);
         }
+        printer.flush();
     }
 
-    private static void printTable(List<Car> cars) {
-        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-
-        // Table header
-        String leftAlignFormat = "| %-15s | %-10s | %-15s | %-12s | %-12s | %-12s | %-12s | %-12s |%n";
-        System.out.format("+-----------------+------------+-----------------+--------------+--------------+--------------+--------------+--------------+%n");
-        System.out.format("| Brand           | Type       | Model           | Release Date | Price (JPY)  | Price (EUR)  | Price (GBP)  | Price (USD)  |%n");
-        System.out.format("+-----------------+------------+-----------------+--------------+--------------+--------------+--------------+--------------+%n");
+    /**
+     * Format the rows of an aggregation, the table has a column for every group field
+     * 
+     * @param rows
+     * @param groups the group fields, brand, type and/or year
+     * @param format
+     * @param out
+     */
+    public static void formatAndWriteStats(List<PriceStats> rows, List<String> groups, String format, OutputStream out) {
+        BufferedOutputStream buffered = new BufferedOutputStream(out, OUTPUT_BUFFER_SIZE);
+        PrintStream printer = new PrintStream(buffered, false);
+        try {
+            switch (format.toLowerCase()) {
+                case AppConstant.OUTPUT_JSON_PARAM:
+                    JSON_WRITER.writeValue(printer, rows);
+                    printer.println();
+                    break;
+                case AppConstant.OUTPUT_XML_PARAM:
+                    XML_WRITER.writeValue(printer, rows);
+                    printer.println();
+                    break;
+                case AppConstant.OUTPUT_TABLE_PARAM:
+                case AppConstant.OUTPUT_TABLE_AUTO_PARAM:
+                    TableWriter.writeText(statsHeaders(groups), statsCells(rows, groups), new OutputStreamWriter(buffered));
+                    break;
+                default:
+                    rows.forEach(printer::println);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        printer.flush();
+    }
 
-        // Rows OK!
-        for (Car car : cars) {
-            System.out.format(
-                    leftAlignFormat,
-                    car.getBrand(),
-                    car.getType(),
-                    car.getModel(),
-                    car.getReleaseDate() != null ? car.getReleaseDate().format(dateFormatter) : "-",
-                    car.getPrices().getOrDefault("JPY", 0.0),
-                    car.getPrices().getOrDefault("EUR", 0.0),
-                    car.getPrices().getOrDefault("GBP", 0.0),
-                    car.getPrices().getOrDefault("USD", 0.0)
-            );
+    private static String[] statsHeaders(List<String> groups) {
+        List<String> headers = new ArrayList<>();
+        for (String group : groups) {
+            headers.add(Character.toUpperCase(group.charAt(0)) + group.substring(1));
         }
+        headers.addAll(Arrays.asList("Currency", "Count", "Sum", "Min", "Max", "Mean", "P50", "P90", "P99"));
+        return headers.toArray(new String[0]);
+    }
 
-        // Thee footer
-        System.out.format("+-----------------+------------+-----------------+--------------+--------------+--------------+--------------+--------------+%n");
+    private static List<String[]> statsCells(List<PriceStats> rows, List<String> groups) {
+        List<String[]> cells = new ArrayList<>();
+        for (PriceStats row : rows) {
+            List<String> values = new ArrayList<>();
+            for (String group : groups) {
+                Object value = group.equals(CarAggregator.GROUP_BRAND) ? row.getBrand()
+                        : group.equals(CarAggregator.GROUP_TYPE) ? row.getType() : row.getYear();
+                values.add(String.valueOf(value));
+            }
+            values.add(row.getCurrency());
+            values.add(Long.toString(row.getCount()));
+            for (double number : new double[]{row.getSum(), row.getMin(), row.getMax(), row.getMean(),
+                    row.getP50(), row.getP90(), row.getP99()}) {
+                values.add(BigDecimal.valueOf(number).setScale(2, RoundingMode.HALF_UP).toPlainString());
+            }
+            cells.add(values.toArray(new String[0]));
+        }
+        return cells;
     }
 
-    private static void printJson(List<Car> cars) {
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.registerModule(new JavaTimeModule()); // ✅ Support LocalDate
-        mapper.enable(SerializationFeature.INDENT_OUTPUT);
-        mapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS); // pretty date format
-        try {
-            String jsonOutput = mapper.writeValueAsString(cars);
-            System.out.println(jsonOutput);
+    private static void printJson(Stream<Car> cars, OutputStream out) {
+        try (SequenceWriter writer = JSON_WRITER.writeValuesAsArray(out)) {
+            for (Iterator<Car> it = cars.iterator(); it.hasNext(); ) {
+                writer.write(it.next());
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    private static void printXml(List<Car> cars) {
-        XmlMapper xmlMapper = new XmlMapper();
-        xmlMapper.registerModule(new JavaTimeModule()); // ✅ Support LocalDate
-        xmlMapper.enable(SerializationFeature.INDENT_OUTPUT);
-        xmlMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS); // pretty date format
-        try {
-            String xmlOutput = xmlMapper.writeValueAsString(cars);
-            System.out.println(xmlOutput);
+    /**
+     * Write the cars one by one inside the same root element Jackson gives a serialized list
+     */
+    private static void printXml(Stream<Car> cars, OutputStream out) {
+        try (ToXmlGenerator generator = (ToXmlGenerator) XML_WRITER.createGenerator(out)) {
+            generator.setNextName(XML_ROOT);
+            generator.writeStartObject();
+            for (Iterator<Car> it = cars.iterator(); it.hasNext(); ) {
+                generator.writeFieldName(XML_ITEM);
+                generator.writeObject(it.next());
+            }
+            generator.writeEndObject();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
+
+    private static <M extends ObjectMapper> M configure(M mapper) {
+        mapper.registerModule(new JavaTimeModule()); // ✅ Support LocalDate
+        mapper.enable(SerializationFeature.INDENT_OUTPUT);
+        mapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS); // pretty date format
+        mapper.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET); // stdout stays open
+        return mapper;
+    }
 }
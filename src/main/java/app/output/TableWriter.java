@@ -0,0 +1,352 @@
+package app.output;
+
+import app.model.Car;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * This class used for writing cars as a text table. The separator and header lines are built
+ * once from the column widths, every row is written into one reused char buffer, numbers and
+ * dates are written digit by digit, and the buffer goes to the Writer in large blocks.
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+public class TableWriter {
+
+    private static final String[] HEADERS = {
+            "Brand", "Type", "Model", "Release Date", "Price (JPY)", "Price (EUR)", "Price (GBP)", "Price (USD)"
+    };
+    private static final String[] PRICE_CURRENCIES = {"JPY", "EUR", "GBP", "USD"};
+    private static final int FIRST_PRICE_COLUMN = 4;
+    private static final int[] FIXED_WIDTHS = {15, 10, 15, 12, 12, 12, 12, 12};
+    private static final int FLUSH_SIZE = 32 * 1024;
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private final Writer out;
+    private final int[] widths;
+    private final char[] separatorLine;
+    private final char[] headerLine;
+    private final char[] newLine = System.lineSeparator().toCharArray();
+    private char[] buffer = new char[FLUSH_SIZE + 1024];
+    private int length;
+
+    /**
+     * @param out
+     * @param widths the width of each of the 8 columns, longer values are not cut
+     */
+    public TableWriter(Writer out, int[] widths) {
+        if (widths.length != HEADERS.length) {
+            throw new IllegalArgumentException("Expected " + HEADERS.length + " column widths but got " + widths.length);
+        }
+        this.out = out;
+        this.widths = widths.clone();
+
+        for (int column = 0; column < widths.length; column++) {
+            append('+');
+            repeat('-', widths[column] + 2);
+        }
+        append('+');
+        append(newLine);
+        this.separatorLine = Arrays.copyOf(buffer, length);
+        length = 0;
+
+        for (int column = 0; column < widths.length; column++) {
+            append(column == 0 ? "| " : " | ");
+            appendPadded(HEADERS[column], widths[column]);
+        }
+        append(" |");
+        append(newLine);
+        this.headerLine = Arrays.copyOf(buffer, length);
+        length = 0;
+    }
+
+    /**
+     * @return the currencies of the price columns, in column order
+     */
+    public static List<String> priceCurrencies() {
+        return Arrays.asList(PRICE_CURRENCIES.clone());
+    }
+
+    /**
+     * Write the cars with the fixed column widths, rows are written as soon as each car arrives
+     * 
+     * @param cars
+     * @param out
+     */
+    public static void write(Stream<Car> cars, Writer out) {
+        TableWriter table = new TableWriter(out, FIXED_WIDTHS);
+        table.writeHeader();
+        for (Iterator<Car> it = cars.iterator(); it.hasNext(); ) {
+            table.writeRow(it.next());
+        }
+        table.writeFooter();
+        table.flush();
+    }
+
+    /**
+     * Write the cars with every column exactly as wide as its longest value. The widths are
+     * measured while the cars are read, so the stream is only consumed once, but nothing is
+     * written before the last car has arrived.
+     * 
+     * @param cars
+     * @param out
+     */
+    public static void writeAutoSized(Stream<Car> cars, Writer out) {
+        int[] widths = new int[HEADERS.length];
+        for (int column = 0; column < widths.length; column++) {
+            widths[column] = HEADERS[column].length();
+        }
+
+        TableWriter measure = new TableWriter(Writer.nullWriter(), widths);
+        List<Car> rows = new ArrayList<>();
+        for (Iterator<Car> it = cars.iterator(); it.hasNext(); ) {
+            Car car = it.next();
+            rows.add(car);
+            for (int column = 0; column < widths.length; column++) {
+                widths[column] = Math.max(widths[column], measure.cellLength(car, column));
+            }
+        }
+
+        TableWriter table = new TableWriter(out, widths);
+        table.writeHeader();
+        for (Car car : rows) {
+            table.writeRow(car);
+        }
+        table.writeFooter();
+        table.flush();
+    }
+
+    /**
+     * Write rows of text with the borders of the car table, every column as wide as its longest value
+     * 
+     * @param headers
+     * @param rows one value per header in every row
+     * @param out
+     */
+    public static void writeText(String[] headers, List<String[]> rows, Writer out) {
+        int[] widths = new int[headers.length];
+        for (int column = 0; column < headers.length; column++) {
+            widths[column] = headers[column].length();
+            for (String[] row : rows) {
+                widths[column] = Math.max(widths[column], row[column].length());
+            }
+        }
+
+        StringBuilder separator = new StringBuilder();
+        for (int width : widths) {
+            separator.append('+');
+            for (int i = 0; i < width + 2; i++) separator.append('-');
+        }
+        separator.append('+').append(System.lineSeparator());
+
+        StringBuilder text = new StringBuilder(separator);
+        appendTextRow(text, headers, widths);
+        text.append(separator);
+        for (String[] row : rows) {
+            appendTextRow(text, row, widths);
+        }
+        text.append(separator);
+        try {
+            out.write(text.toString());
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void appendTextRow(StringBuilder text, String[] values, int[] widths) {
+        for (int column = 0; column < widths.length; column++) {
+            text.append(column == 0 ? "| " : " | ").append(values[column]);
+            for (int i = values[column].length(); i < widths[column]; i++) text.append(' ');
+        }
+        text.append(" |").append(System.lineSeparator());
+    }
+
+    public void writeHeader() {
+        append(separatorLine);
+        append(headerLine);
+        append(separatorLine);
+    }
+
+    /**
+     * @param car
+     */
+    public void writeRow(Car car) {
+        for (int column = 0; column < widths.length; column++) {
+            append(column == 0 ? "| " : " | ");
+            int start = length;
+            appendCell(car, column);
+            repeat(' ', widths[column] - (length - start));
+        }
+        append(" |");
+        append(newLine);
+        if (length >= FLUSH_SIZE) {
+            drain();
+        }
+    }
+
+    public void writeFooter() {
+        append(separatorLine);
+    }
+
+    /**
+     * Write out everything still buffered and flush the Writer
+     */
+    public void flush() {
+        drain();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int cellLength(Car car, int column) {
+        int start = length;
+        appendCell(car, column);
+        int cellLength = length - start;
+        length = start;
+        return cellLength;
+    }
+
+    private void appendCell(Car car, int column) {
+        switch (column) {
+            case 0:
+                append(String.valueOf(car.getBrand()));
+                break;
+            case 1:
+                append(String.valueOf(car.getType()));
+                break;
+            case 2:
+                append(String.valueOf(car.getModel()));
+                break;
+            case 3:
+                appendDate(car.getReleaseDate());
+                break;
+            default:
+                Double price = car.getPrices().getOrDefault(PRICE_CURRENCIES[column - FIRST_PRICE_COLUMN], 0.0);
+                if (price != null) {
+                    appendPrice(price);
+                } else {
+                    append("null");
+                }
+        }
+    }
+
+    private void appendDate(LocalDate date) {
+        if (date == null) {
+            append('-');
+        } else if (date.getYear() < 0 || date.getYear() > 9999) {
+            append(date.format(DATE_FORMATTER));
+        } else {
+            appendDigits(date.getYear(), 4);
+            append('-');
+            appendDigits(date.getMonthValue(), 2);
+            append('-');
+            appendDigits(date.getDayOfMonth(), 2);
+        }
+    }
+
+    /**
+     * Write the price the same way as {@link Double#toString(double)}. Whole numbers and numbers
+     * with at most two decimals between 1 and 10^7 (every price in practice) are written digit by
+     * digit, anything else falls back to Double.toString.
+     */
+    private void appendPrice(double value) {
+        if (Double.doubleToRawLongBits(value) == 0L) {
+            append("0.0");
+            return;
+        }
+        if (value >= 1 && value < 1e7) {
+            long cents = Math.round(value * 100);
+            // cents / 100.0 is the double nearest to the two decimal number, so when it equals
+            // the value that number is the shortest text that reads back as the value
+            if (cents / 100.0 == value) {
+                appendLong(cents / 100);
+                append('.');
+                int fraction = (int) (cents % 100);
+                append((char) ('0' + fraction / 10));
+                if (fraction % 10 != 0) {
+                    append((char) ('0' + fraction % 10));
+                }
+                return;
+            }
+        }
+        append(Double.toString(value));
+    }
+
+    private void appendLong(long value) {
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        ensureCapacity(digits);
+        for (int i = length + digits - 1; i >= length; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    private void appendDigits(int value, int digits) {
+        ensureCapacity(digits);
+        for (int i = length + digits - 1; i >= length; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    private void appendPadded(String value, int width) {
+        append(value);
+        repeat(' ', width - value.length());
+    }
+
+    private void append(String value) {
+        ensureCapacity(value.length());
+        value.getChars(0, value.length(), buffer, length);
+        length += value.length();
+    }
+
+    private void append(char[] chars) {
+        ensureCapacity(chars.length);
+        System.arraycopy(chars, 0, buffer, length, chars.length);
+        length += chars.length;
+    }
+
+    private void append(char c) {
+        ensureCapacity(1);
+        buffer[length++] = c;
+    }
+
+    private void repeat(char c, int count) {
+        if (count <= 0) return;
+        ensureCapacity(count);
+        Arrays.fill(buffer, length, length + count, c);
+        length += count;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+
+    private void drain() {
+        try {
+            out.write(buffer, 0, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        length = 0;
+    }
+}
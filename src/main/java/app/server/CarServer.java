@@ -0,0 +1,238 @@
+package app.server;
+
+import app.constant.AppConstant;
+import app.model.Car;
+import app.model.CarTable;
+import app.output.OutputFormatter;
+import app.service.CarIndex;
+import app.service.CarSorter;
+import app.service.WhereExpression;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * This class used for answering queries over HTTP from a dataset that is loaded once and stays in
+ * memory, so a query does not pay for JVM startup and parsing. The cars are kept in a
+ * {@link CarTable} with a {@link CarIndex}, both are only read after loading, so any number of
+ * requests can run at the same time. A newer version can be swapped in with
+ * {@link #replace(CarTable, CarIndex)} while requests are running.
+ * <p>
+ * GET /cars takes the same options as the command line as query parameters:
+ * filter and value (like --filter), where, sort, limit and output, e.g.
+ * /cars?filter=brand-price&amp;value=Toyota,20000,30000&amp;sort=price&amp;output=json
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+public class CarServer {
+
+    public static final String CARS_PATH = "/cars";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private volatile Dataset dataset;
+
+    private CarServer(HttpServer server, ExecutorService executor, CarTable table) {
+        this.server = server;
+        this.executor = executor;
+        this.dataset = new Dataset(table, CarIndex.build(table));
+    }
+
+    /**
+     * Start serving the cars on the loopback interface
+     * 
+     * @param table
+     * @param port 0 picks a free port
+     * @return the running server
+     * @throws IOException
+     */
+    public static CarServer start(CarTable table, int port) throws IOException {
+        HttpServer http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        ExecutorService executor = newExecutor();
+        CarServer server = new CarServer(http, executor, table);
+        http.createContext(CARS_PATH, server::handleCars);
+        http.setExecutor(executor);
+        http.start();
+        return server;
+    }
+
+    /**
+     * Serve a new version of the cars. Requests that already started finish on the version they
+     * started with, nobody waits for the swap
+     * 
+     * @param table
+     * @param index the index of the table
+     */
+    public void replace(CarTable table, CarIndex index) {
+        if (index.getTable() != table) {
+            throw new IllegalArgumentException("The index does not belong to the table");
+        }
+        this.dataset = new Dataset(table, index);
+    }
+
+    public CarIndex getIndex() {
+        return dataset.index;
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stop accepting requests, waiting at most delaySeconds for the running ones
+     * 
+     * @param delaySeconds
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    private void handleCars(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "Only GET is supported");
+                return;
+            }
+            Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+            String format = parameters.getOrDefault("output", AppConstant.OUTPUT_TABLE_PARAM);
+
+            Stream<Car> cars;
+            try {
+                cars = query(parameters);
+            } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+                sendError(exchange, 400, "Invalid query: " + e.getMessage());
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", contentType(format));
+            exchange.sendResponseHeaders(200, 0);
+            try (Stream<Car> outputCars = cars; OutputStream body = exchange.getResponseBody()) {
+                OutputFormatter.formatAndWrite(outputCars, format, body);
+            }
+        } catch (RuntimeException e) {
+            if (exchange.getResponseCode() == -1) {
+                sendError(exchange, 500, "An error occurred: " + e.getMessage());
+            } else {
+                // The body was already being written, the client sees the response cut short
+                e.printStackTrace();
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Run the query against the table. Everything that can reject the query happens here, before
+     * the response is started; the returned stream only creates the cars while they are written
+     */
+    private Stream<Car> query(Map<String, String> parameters) {
+        Dataset current = dataset;
+        CarTable table = current.table;
+        String filterType = parameters.get("filter");
+        String sortOption = parameters.get("sort");
+        String whereExpression = parameters.get("where");
+        String limitValue = parameters.get("limit");
+
+        int[] rows;
+        if (filterType != null) {
+            String filterValue = parameters.get("value");
+            if (filterValue == null) {
+                throw new IllegalArgumentException("filter needs a value");
+            }
+            rows = current.index.filter(filterType, filterValue);
+        } else {
+            rows = IntStream.range(0, table.size()).toArray();
+        }
+
+        if (whereExpression != null) {
+            // Tested against the columns, a Car is only created for the rows that are written
+            rows = Arrays.stream(rows).filter(WhereExpression.compile(whereExpression, table)).toArray();
+        }
+
+        if (limitValue != null) {
+            if (!limitValue.matches("\\d+")) {
+                throw new IllegalArgumentException("limit must be a number");
+            }
+            int[] sorted = CarSorter.sort(table, rows, sortOption);
+            return table.stream(Arrays.copyOf(sorted, Math.min(sorted.length, Integer.parseInt(limitValue))));
+        }
+        return table.stream(CarSorter.sort(table, rows, sortOption));
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            String name = separator < 0 ? pair : pair.substring(0, separator);
+            String value = separator < 0 ? "" : pair.substring(separator + 1);
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static String contentType(String format) {
+        switch (format.toLowerCase()) {
+            case AppConstant.OUTPUT_JSON_PARAM:
+                return "application/json; charset=utf-8";
+            case AppConstant.OUTPUT_XML_PARAM:
+                return "application/xml; charset=utf-8";
+            default:
+                return "text/plain";
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * A table with its index, never changed once served
+     */
+    private static final class Dataset {
+        final CarTable table;
+        final CarIndex index;
+
+        Dataset(CarTable table, CarIndex index) {
+            this.table = table;
+            this.index = index;
+        }
+    }
+
+    /**
+     * One virtual thread per request when the JVM has them (Java 21+), otherwise a pool with a
+     * thread per core, as the queries are CPU bound
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package app.server;
+
+import app.service.CarIndex;
+import app.service.IncrementalCarLoader;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class used for reloading the cars of a {@link CarServer} when its xml or csv file changes.
+ * A background thread waits for file events, lets a burst of writes settle, asks the
+ * {@link IncrementalCarLoader} for the change, updates the index with only the new and changed
+ * rows, and swaps the new version into the server.
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+public class DatasetWatcher implements AutoCloseable {
+
+    private static final long SETTLE_MILLIS = 200;
+
+    private final IncrementalCarLoader loader;
+    private final CarServer server;
+    private final WatchService watchService;
+    private final Set<Path> files = new HashSet<>();
+    private final Thread thread;
+    private CarIndex index;
+
+    private DatasetWatcher(IncrementalCarLoader loader, CarServer server, String xmlFilePath, String csvFilePath) throws IOException {
+        this.loader = loader;
+        this.server = server;
+        this.index = server.getIndex();
+        this.watchService = FileSystems.getDefault().newWatchService();
+        for (String filePath : new String[]{xmlFilePath, csvFilePath}) {
+            Path file = Paths.get(filePath).toAbsolutePath().normalize();
+            if (files.add(file)) {
+                // Only directories can be watched, the events of the other files are skipped
+                file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        }
+        this.thread = new Thread(this::run, "dataset-watcher");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Start watching the files the loader reads, the server must serve the loader's current table
+     * 
+     * @param loader
+     * @param server
+     * @param xmlFilePath
+     * @param csvFilePath
+     * @return the running watcher
+     * @throws IOException
+     */
+    public static DatasetWatcher start(IncrementalCarLoader loader, CarServer server, String xmlFilePath, String csvFilePath) throws IOException {
+        if (server.getIndex().getTable() != loader.getTable()) {
+            throw new IllegalArgumentException("The server does not serve the table of the loader");
+        }
+        DatasetWatcher watcher = new DatasetWatcher(loader, server, xmlFilePath, csvFilePath);
+        watcher.thread.start();
+        return watcher;
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                if (!isSourceChange(watchService.take())) {
+                    continue;
+                }
+                // Wait until no more events come, a big write produces many of them
+                WatchKey key;
+                while ((key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    isSourceChange(key);
+                }
+                reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    private boolean isSourceChange(WatchKey key) {
+        boolean changed = false;
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || files.contains(directory.resolve((Path) event.context()))) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    private void reload() {
+        try {
+            long start = System.nanoTime();
+            IncrementalCarLoader.Change change = loader.refresh();
+            if (change == null) {
+                return;
+            }
+            boolean incremental = !change.isReloaded() && index.getTable().size() == change.getFirstNewRow();
+            index = !incremental
+                    ? CarIndex.build(change.getTable())
+                    : index.update(change.getTable(), change.getFirstNewRow(), change.getChangedRows());
+            server.replace(change.getTable(), index);
+            System.out.println((change.isReloaded() ? "Reloaded " : "Updated ")
+                    + (change.getTable().size() - change.getFirstNewRow()) + " new and "
+                    + change.getChangedRows().length + " changed cars in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms, serving "
+                    + change.getTable().size() + " cars");
+        } catch (Exception e) {
+            // Keep serving the last good version, the next change tries again
+            System.err.println("An error occurred while reloading: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        thread.interrupt();
+    }
+}
@@ -0,0 +1,281 @@
+package app.service;
+
+import app.model.BatchJob;
+import app.model.Car;
+import app.output.OutputFormatter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * This class used for running many queries over the cars in one pass. The cars are read once and
+ * every car is tested against the filter and where expression of every job, the matching ones are
+ * handed to the job in chunks through a bounded queue. Each job has its own thread that sorts and
+ * writes its cars to its own file, so the jobs sort and write in parallel while the cars are still
+ * being read.
+ * <p>
+ * A job that fails, e.g. because its file cannot be written, keeps taking its cars off the queue
+ * without using them, so it never holds up the other jobs.
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+public class BatchRunner {
+
+    private static final int CHUNK_SIZE = 512;
+    private static final int QUEUE_CHUNKS = 16;
+    private static final List<Car> END = new ArrayList<>(0);
+
+    /**
+     * Read the jobs of a --batch file, a JSON array of objects with the fields of {@link BatchJob}
+     * 
+     * @param filePath
+     * @return the jobs, in file order
+     * @throws IOException
+     * @throws IllegalArgumentException when a job is not valid
+     */
+    public static List<BatchJob> readJobs(String filePath) throws IOException {
+        List<BatchJob> jobs = Arrays.asList(new ObjectMapper().readValue(new File(filePath), BatchJob[].class));
+        Set<Path> files = new HashSet<>();
+        for (int i = 0; i < jobs.size(); i++) {
+            BatchJob job = jobs.get(i);
+            String name = "Job " + (i + 1) + " of " + filePath;
+            if (job.getFile() == null || job.getFile().isEmpty()) {
+                throw new IllegalArgumentException(name + " has no file");
+            }
+            if (!files.add(Paths.get(job.getFile()).toAbsolutePath().normalize())) {
+                throw new IllegalArgumentException(name + " writes to " + job.getFile() + " like a job before it");
+            }
+            if (job.getFilter() != null && job.getValue() == null) {
+                throw new IllegalArgumentException(name + " has a filter without a value");
+            }
+            if (job.getSortMemory() != null && job.getSortMemory() < 1) {
+                throw new IllegalArgumentException(name + " needs a positive sortMemory");
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * Run the jobs over the cars, reading the cars only once. Every job is checked before the
+     * first car is read, a job that cannot run stops the whole batch
+     * 
+     * @param cars
+     * @param jobs
+     * @return the result of every job, in job order
+     * @throws InterruptedException
+     */
+    public static List<Result> run(Stream<Car> cars, List<BatchJob> jobs) throws InterruptedException {
+        List<Route> routes = new ArrayList<>();
+        for (BatchJob job : jobs) {
+            routes.add(new Route(job));
+        }
+        Route[] targets = routes.toArray(new Route[0]);
+
+        for (Route route : targets) {
+            route.thread.start();
+        }
+        try {
+            cars.forEachOrdered(car -> {
+                for (Route route : targets) {
+                    if (route.predicate.test(car)) route.add(car);
+                }
+            });
+        } finally {
+            for (Route route : targets) {
+                route.finish();
+            }
+            for (Route route : targets) {
+                route.thread.join();
+            }
+        }
+
+        List<Result> results = new ArrayList<>();
+        for (Route route : targets) {
+            results.add(route.result);
+        }
+        return results;
+    }
+
+    /**
+     * The way from the scan to the file of one job
+     */
+    private static final class Route {
+        final BatchJob job;
+        final Predicate<Car> predicate;
+        final BlockingQueue<List<Car>> queue = new ArrayBlockingQueue<>(QUEUE_CHUNKS);
+        final Stream<Car> output;
+        final Thread thread;
+        volatile boolean failed;
+        List<Car> chunk = new ArrayList<>(CHUNK_SIZE);
+        boolean ended;
+        long written;
+        Result result;
+
+        Route(BatchJob job) {
+            this.job = job;
+            Predicate<Car> matches = car -> true;
+            if (job.getFilter() != null) {
+                matches = CarFilter.predicate(job.getFilter(), job.getValue());
+            }
+            if (job.getWhere() != null) {
+                matches = matches.and(WhereExpression.compile(job.getWhere()));
+            }
+            this.predicate = matches;
+
+            // Built here so an unsupported sort fails before any car is read
+            Stream<Car> cars = StreamSupport.stream(new QueueSpliterator(), false);
+            if (job.getLimit() != null) {
+                cars = CarSorter.sort(cars, job.getSort(), job.getLimit());
+            } else if (job.getSort() != null && job.getSortMemory() != null) {
+                cars = CarSorter.sortExternal(cars, job.getSort(), job.getSortMemory() * 1024 * 1024);
+            } else if (job.getSort() != null) {
+                cars = CarSorter.sort(cars, job.getSort());
+            }
+            this.output = cars.peek(car -> written++);
+            this.thread = new Thread(this::write, "batch-" + Paths.get(job.getFile()).getFileName());
+        }
+
+        /** Called by the scan for every matching car */
+        void add(Car car) {
+            if (failed) return;
+            chunk.add(car);
+            if (chunk.size() == CHUNK_SIZE) {
+                put(chunk);
+                chunk = new ArrayList<>(CHUNK_SIZE);
+            }
+        }
+
+        /** Called by the scan when there are no more cars */
+        void finish() {
+            if (!chunk.isEmpty() && !failed) put(chunk);
+            chunk = null;
+            put(END);
+        }
+
+        private void put(List<Car> cars) {
+            try {
+                queue.put(cars);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while handing cars to " + job.getFile(), e);
+            }
+        }
+
+        private void write() {
+            long start = System.nanoTime();
+            Exception error = null;
+            try {
+                Path file = Paths.get(job.getFile());
+                if (file.toAbsolutePath().getParent() != null) {
+                    Files.createDirectories(file.toAbsolutePath().getParent());
+                }
+                try (OutputStream out = Files.newOutputStream(file); Stream<Car> cars = output) {
+                    // A file ending in .gz or .zst is written compressed
+                    Compression.write(out, Compression.codecOf(job.getFile()), target -> OutputFormatter.formatAndWrite(cars, job.getOutput(), target));
+                }
+            } catch (Exception e) {
+                error = e;
+                failed = true;
+            } finally {
+                // Keep the queue moving until the scan is done, the scan must never wait for a failed job
+                try {
+                    while (!ended) {
+                        if (queue.take() == END) ended = true;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                result = new Result(job, written, System.nanoTime() - start, error);
+            }
+        }
+
+        /**
+         * The cars of the job as the scan hands them over
+         */
+        private final class QueueSpliterator extends Spliterators.AbstractSpliterator<Car> {
+            private List<Car> current = END;
+            private int index;
+
+            QueueSpliterator() {
+                super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            }
+
+            @Override
+            public boolean tryAdvance(Consumer<? super Car> action) {
+                while (index == current.size()) {
+                    if (ended) return false;
+                    try {
+                        current = queue.take();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while waiting for cars", e);
+                    }
+                    index = 0;
+                    if (current == END) ended = true;
+                }
+                action.accept(current.get(index++));
+                return true;
+            }
+        }
+    }
+
+    /**
+     * What a job did
+     */
+    public static class Result {
+        private final BatchJob job;
+        private final long cars;
+        private final long nanos;
+        private final Exception error;
+
+        Result(BatchJob job, long cars, long nanos, Exception error) {
+            this.job = job;
+            this.cars = cars;
+            this.nanos = nanos;
+            this.error = error;
+        }
+
+        public BatchJob getJob() {
+            return job;
+        }
+
+        /**
+         * @return the cars written to the file
+         */
+        public long getCars() {
+            return cars;
+        }
+
+        /**
+         * @return the time from the start of the batch until the file was written
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return why the job failed, or null when it succeeded
+         */
+        public Exception getError() {
+            return error;
+        }
+    }
+}
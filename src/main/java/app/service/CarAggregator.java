@@ -0,0 +1,292 @@
+package app.service;
+
+import app.model.Car;
+import app.model.PriceStats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+
+/**
+ * This class used for the --aggregate statistics: count, sum, min, max, mean and the 50th, 90th
+ * and 99th percentile of the prices of every currency, per group of brand, type and/or release
+ * year. The cars are read once; each currency of a group has one accumulator of primitives and a
+ * quantile sketch, and partial results of a parallel stream are merged at the end.
+ * <p>
+ * The percentiles come from a sketch with logarithmic buckets, so they are within 1% of a price
+ * of the group whatever the number of cars, and two sketches merge by adding their buckets.
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+public class CarAggregator {
+
+    public static final String GROUP_BRAND = "brand";
+    public static final String GROUP_TYPE = "type";
+    public static final String GROUP_YEAR = "year";
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99};
+
+    /**
+     * Parse a comma separated list of brand, type and year
+     * 
+     * @param groupBy
+     * @return the group fields, in the given order
+     * @throws IllegalArgumentException when a field is unknown or listed twice
+     */
+    public static List<String> parseGroups(String groupBy) {
+        List<String> groups = new ArrayList<>();
+        for (String group : groupBy.split(",")) {
+            String field = group.trim().toLowerCase(Locale.ROOT);
+            if (!field.equals(GROUP_BRAND) && !field.equals(GROUP_TYPE) && !field.equals(GROUP_YEAR)) {
+                throw new IllegalArgumentException("Unknown group '" + group.trim() + "', allowed: brand, type, year");
+            }
+            if (groups.contains(field)) {
+                throw new IllegalArgumentException("Group '" + field + "' is listed twice");
+            }
+            groups.add(field);
+        }
+        return groups;
+    }
+
+    /**
+     * Aggregate the prices of the cars per group, in parallel when the stream is parallel
+     * 
+     * @param cars
+     * @param groups from {@link #parseGroups(String)}
+     * @return one row per group and currency, ordered by the group fields and the currency
+     */
+    public static List<PriceStats> aggregate(Stream<Car> cars, List<String> groups) {
+        return cars.collect(collector(groups));
+    }
+
+    /**
+     * @param groups from {@link #parseGroups(String)}
+     * @return a collector giving the rows of {@link #aggregate(Stream, List)}
+     */
+    public static Collector<Car, ?, List<PriceStats>> collector(List<String> groups) {
+        boolean byBrand = groups.contains(GROUP_BRAND);
+        boolean byType = groups.contains(GROUP_TYPE);
+        boolean byYear = groups.contains(GROUP_YEAR);
+        return Collector.of(
+                HashMap<GroupKey, Map<String, PriceAccumulator>>::new,
+                (partial, car) -> {
+                    GroupKey key = new GroupKey(
+                            byBrand ? car.getBrand() : null,
+                            byType ? car.getType() : null,
+                            byYear && car.getReleaseDate() != null ? car.getReleaseDate().getYear() : null);
+                    Map<String, PriceAccumulator> currencies = partial.computeIfAbsent(key, k -> new HashMap<>());
+                    for (Map.Entry<String, Double> price : car.getPrices().entrySet()) {
+                        if (price.getValue() != null) {
+                            currencies.computeIfAbsent(price.getKey(), c -> new PriceAccumulator()).add(price.getValue());
+                        }
+                    }
+                },
+                (left, right) -> {
+                    right.forEach((key, currencies) -> {
+                        Map<String, PriceAccumulator> merged = left.computeIfAbsent(key, k -> new HashMap<>());
+                        currencies.forEach((currency, accumulator) -> merged.merge(currency, accumulator, PriceAccumulator::merge));
+                    });
+                    return left;
+                },
+                partial -> rows(partial, groups),
+                Collector.Characteristics.UNORDERED);
+    }
+
+    private static List<PriceStats> rows(Map<GroupKey, Map<String, PriceAccumulator>> groups, List<String> groupOrder) {
+        List<PriceStats> rows = new ArrayList<>();
+        groups.forEach((key, currencies) -> currencies.forEach((currency, accumulator) -> {
+            PriceStats row = accumulator.toStats();
+            row.setBrand(key.brand);
+            row.setType(key.type);
+            row.setYear(key.year);
+            row.setCurrency(currency);
+            rows.add(row);
+        }));
+
+        Comparator<PriceStats> order = null;
+        for (String group : groupOrder) {
+            Comparator<PriceStats> field;
+            switch (group) {
+                case GROUP_BRAND:
+                    field = Comparator.comparing(PriceStats::getBrand, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER));
+                    break;
+                case GROUP_TYPE:
+                    field = Comparator.comparing(PriceStats::getType, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER));
+                    break;
+                default:
+                    field = Comparator.comparing(PriceStats::getYear, Comparator.nullsLast(Comparator.naturalOrder()));
+            }
+            order = order == null ? field : order.thenComparing(field);
+        }
+        Comparator<PriceStats> byCurrency = Comparator.comparing(PriceStats::getCurrency);
+        rows.sort(order == null ? byCurrency : order.thenComparing(byCurrency));
+        return rows;
+    }
+
+    private static final class GroupKey {
+        final String brand;
+        final String type;
+        final Integer year;
+        final int hash;
+
+        GroupKey(String brand, String type, Integer year) {
+            this.brand = brand;
+            this.type = type;
+            this.year = year;
+            this.hash = Objects.hash(brand, type, year);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof GroupKey)) return false;
+            GroupKey other = (GroupKey) o;
+            return Objects.equals(brand, other.brand) && Objects.equals(type, other.type) && Objects.equals(year, other.year);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Count, sum, min, max and a quantile sketch of the prices of one currency in one group
+     */
+    private static final class PriceAccumulator {
+        long count;
+        double sum;
+        double compensation;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        final QuantileSketch sketch = new QuantileSketch();
+
+        void add(double price) {
+            count++;
+            addToSum(price);
+            if (price < min) min = price;
+            if (price > max) max = price;
+            sketch.add(price);
+        }
+
+        /** Kahan summation, so a sum of millions of prices keeps its cents */
+        private void addToSum(double value) {
+            double y = value - compensation;
+            double t = sum + y;
+            compensation = (t - sum) - y;
+            sum = t;
+        }
+
+        PriceAccumulator merge(PriceAccumulator other) {
+            count += other.count;
+            addToSum(other.sum);
+            addToSum(-other.compensation);
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            sketch.merge(other.sketch);
+            return this;
+        }
+
+        PriceStats toStats() {
+            PriceStats stats = new PriceStats();
+            stats.setCount(count);
+            stats.setSum(round(sum));
+            stats.setMin(min);
+            stats.setMax(max);
+            stats.setMean(round(sum / count));
+            double[] quantiles = new double[PERCENTILES.length];
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                // The estimate of a bucket can lie just outside the prices that fell into it
+                quantiles[i] = round(Math.max(min, Math.min(max, sketch.quantile(PERCENTILES[i]))));
+            }
+            stats.setP50(quantiles[0]);
+            stats.setP90(quantiles[1]);
+            stats.setP99(quantiles[2]);
+            return stats;
+        }
+
+        private static double round(double value) {
+            return Math.round(value * 100) / 100.0;
+        }
+    }
+
+    /**
+     * A sketch counting the values in buckets whose bounds grow by a factor gamma, so any value of a
+     * bucket is within the relative accuracy of the middle of the bucket. Values of 0 or less are
+     * only counted
+     */
+    static final class QuantileSketch {
+        private static final double RELATIVE_ACCURACY = 0.01;
+        private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+        private static final double LOG_GAMMA = Math.log(GAMMA);
+
+        private long[] counts = new long[0];
+        private int firstIndex;
+        private long zeroCount;
+        private long total;
+
+        void add(double value) {
+            total++;
+            if (value <= 0) {
+                zeroCount++;
+                return;
+            }
+            int index = (int) Math.ceil(Math.log(value) / LOG_GAMMA);
+            ensureBucket(index);
+            counts[index - firstIndex]++;
+        }
+
+        void merge(QuantileSketch other) {
+            total += other.total;
+            zeroCount += other.zeroCount;
+            if (other.counts.length == 0) return;
+            ensureBucket(other.firstIndex);
+            ensureBucket(other.firstIndex + other.counts.length - 1);
+            for (int i = 0; i < other.counts.length; i++) {
+                counts[other.firstIndex + i - firstIndex] += other.counts[i];
+            }
+        }
+
+        /**
+         * @param q between 0 and 1
+         * @return the value of rank q, within the relative accuracy
+         */
+        double quantile(double q) {
+            if (total == 0) return Double.NaN;
+            long rank = (long) Math.floor(q * (total - 1));
+            if (rank < zeroCount) return 0;
+            long seen = zeroCount;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen > rank) {
+                    return 2 * Math.pow(GAMMA, firstIndex + i) / (GAMMA + 1);
+                }
+            }
+            return 2 * Math.pow(GAMMA, firstIndex + counts.length - 1) / (GAMMA + 1);
+        }
+
+        private void ensureBucket(int index) {
+            if (counts.length == 0) {
+                counts = new long[16];
+                firstIndex = index - 8;
+                return;
+            }
+            if (index < firstIndex) {
+                int grow = Math.max(firstIndex - index, counts.length / 2);
+                long[] grown = new long[counts.length + grow];
+                System.arraycopy(counts, 0, grown, grow, counts.length);
+                counts = grown;
+                firstIndex -= grow;
+            } else if (index >= firstIndex + counts.length) {
+                int grow = Math.max(index - firstIndex - counts.length + 1, counts.length / 2);
+                counts = Arrays.copyOf(counts, counts.length + grow);
+            }
+        }
+    }
+}
@@ -7,7 +7,9 @@ import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.List;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * This class used for handle the filtering features
@@ -28,6 +30,29 @@ public class CarFilter {
      * @return List Car Object
      */
     public static List<Car> filter(List<Car> cars, String type, String value) {
+        return filter(cars.stream(), type, value).collect(Collectors.toList());
+    }
+
+    /**
+     * Filter the stream based on type and value, the cars are tested lazily as they are pulled
+     * 
+     * @param cars
+     * @param type
+     * @param value
+     * @return Stream Car Object
+     */
+    public static Stream<Car> filter(Stream<Car> cars, String type, String value) {
+        return cars.filter(predicate(type, value));
+    }
+
+    /**
+     * Compile the filter of type and value into one test of a car
+     * 
+     * @param type
+     * @param value
+     * @return Predicate over Car
+     */
+    public static Predicate<Car> predicate(String type, String value) {
         String[] parts = value.split(",");
 
         switch (type) {
@@ -35,26 +60,34 @@ public class CarFilter {
                 String brand = parts[0];
                 double min = Double.parseDouble(parts[1]);
                 double max = Double.parseDouble(parts[2]);
-                return cars.stream()
-                        .filter(c -> c.getBrand().equalsIgnoreCase(brand))
-                        .filter(c -> c.getPrices().getOrDefault("USD", 0.0) >= min)
-                        .filter(c -> c.getPrices().getOrDefault("USD", 0.0) <= max)
-                        .collect(Collectors.toList());
+                return c -> c.getBrand().equalsIgnoreCase(brand)
+                        && c.getPrices().getOrDefault("USD", 0.0) >= min
+                        && c.getPrices().getOrDefault("USD", 0.0) <= max;
 
             case AppConstant.FILTER_BRAND_RELEASE:
                 String brandFilter = parts[0];
                 final LocalDate releaseDate = parseDate(parts[1]);
-                return cars.stream()
-                        .filter(c -> c.getBrand().equalsIgnoreCase(brandFilter))
-                        .filter(c -> c.getReleaseDate() != null && c.getReleaseDate().isEqual(releaseDate))
-                        .collect(Collectors.toList());
+                return c -> c.getBrand().equalsIgnoreCase(brandFilter)
+                        && c.getReleaseDate() != null && c.getReleaseDate().isEqual(releaseDate);
 
             default:
                 throw new IllegalArgumentException("Unsupported filter type: " + type);
         }
     }
 
-    private static LocalDate parseDate(String value) {
+    /**
+     * Filter the stream with a --where expression, see {@link WhereExpression} for the syntax.
+     * The expression is compiled once before the first car is tested
+     * 
+     * @param cars
+     * @param expression
+     * @return Stream Car Object
+     */
+    public static Stream<Car> where(Stream<Car> cars, String expression) {
+        return cars.filter(WhereExpression.compile(expression));
+    }
+
+    static LocalDate parseDate(String value) {
         try {
             return LocalDate.parse(value, DATE_FORMAT_DASHES);
         } catch (DateTimeParseException e) {
@@ -0,0 +1,344 @@
+package app.service;
+
+import app.constant.AppConstant;
+import app.model.CarTable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * This class used for answering the filters from indexes built once over a {@link CarTable},
+ * instead of scanning every car for every query: a case folded hash index on brand, and
+ * sorted indexes on the USD price and on the release date. The table must not change after
+ * the index is built.
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+public class CarIndex {
+
+    private static final int[] NO_ROWS = new int[0];
+
+    private final CarTable table;
+    private final int usdColumn;
+    private final Map<String, int[]> rowsByBrand;
+    private final int[] rowsByUsd;
+    private final double[] usdKeys;
+    private final int[] rowsByRelease;
+    private final int[] releaseKeys;
+
+    private CarIndex(CarTable table) {
+        this.table = table;
+        this.usdColumn = table.getCurrencyColumn("USD");
+
+        int[][] brandRows = rowsByBrandCode(table, 0);
+        // Brands that only differ in case share one posting list, merged back into row order
+        this.rowsByBrand = new HashMap<>();
+        for (int code = 0; code < brandRows.length; code++) {
+            rowsByBrand.merge(fold(table.getBrands().decode(code)), brandRows[code], CarIndex::union);
+        }
+
+        this.rowsByUsd = IntStream.range(0, table.size()).toArray();
+        RowSort.mergeSort(rowsByUsd, (r1, r2) -> Double.compare(usdPrice(r1), usdPrice(r2)));
+        this.usdKeys = new double[rowsByUsd.length];
+        for (int i = 0; i < rowsByUsd.length; i++) usdKeys[i] = usdPrice(rowsByUsd[i]);
+
+        this.rowsByRelease = IntStream.range(0, table.size())
+                .filter(row -> table.getReleaseDay(row) != CarTable.NO_DATE)
+                .toArray();
+        RowSort.mergeSort(rowsByRelease, (r1, r2) -> Integer.compare(table.getReleaseDay(r1), table.getReleaseDay(r2)));
+        this.releaseKeys = new int[rowsByRelease.length];
+        for (int i = 0; i < rowsByRelease.length; i++) releaseKeys[i] = table.getReleaseDay(rowsByRelease[i]);
+    }
+
+    /**
+     * Index a newer version of the table from this index: rows before firstNewRow must be the
+     * same cars as in the indexed table, except that the release date of changedRows may differ.
+     * Only the new and changed rows are sorted and merged in, the result is the same as
+     * {@link #build(CarTable)} of the new table
+     */
+    private CarIndex(CarIndex previous, CarTable table, int firstNewRow, int[] changedRows) {
+        this.table = table;
+        this.usdColumn = table.getCurrencyColumn("USD");
+
+        int[][] newBrandRows = rowsByBrandCode(table, firstNewRow);
+        this.rowsByBrand = new HashMap<>(previous.rowsByBrand);
+        for (int code = 0; code < newBrandRows.length; code++) {
+            if (newBrandRows[code].length > 0) {
+                rowsByBrand.merge(fold(table.getBrands().decode(code)), newBrandRows[code], CarIndex::union);
+            }
+        }
+
+        // The USD price of an old row never changes, so only the new rows have to be merged in
+        int[] newByUsd = IntStream.range(firstNewRow, table.size()).toArray();
+        RowSort.mergeSort(newByUsd, (r1, r2) -> Double.compare(usdPrice(r1), usdPrice(r2)));
+        double[] newUsdKeys = new double[newByUsd.length];
+        for (int i = 0; i < newByUsd.length; i++) newUsdKeys[i] = usdPrice(newByUsd[i]);
+        this.rowsByUsd = new int[previous.rowsByUsd.length + newByUsd.length];
+        this.usdKeys = new double[rowsByUsd.length];
+        int i = 0, j = 0, k = 0;
+        while (i < previous.rowsByUsd.length || j < newByUsd.length) {
+            boolean takeOld = j == newByUsd.length || (i < previous.rowsByUsd.length
+                    && Double.compare(previous.usdKeys[i], newUsdKeys[j]) <= 0);
+            rowsByUsd[k] = takeOld ? previous.rowsByUsd[i] : newByUsd[j];
+            usdKeys[k++] = takeOld ? previous.usdKeys[i++] : newUsdKeys[j++];
+        }
+
+        // Changed rows leave their old place and come back with the new and the moved rows
+        boolean[] changed = new boolean[firstNewRow];
+        for (int row : changedRows) changed[row] = true;
+        int[] added = IntStream.concat(Arrays.stream(changedRows), IntStream.range(firstNewRow, table.size()))
+                .filter(row -> table.getReleaseDay(row) != CarTable.NO_DATE)
+                .sorted()
+                .toArray();
+        RowSort.mergeSort(added, (r1, r2) -> Integer.compare(table.getReleaseDay(r1), table.getReleaseDay(r2)));
+        int kept = 0;
+        for (int row : previous.rowsByRelease) if (!changed[row]) kept++;
+        this.rowsByRelease = new int[kept + added.length];
+        this.releaseKeys = new int[rowsByRelease.length];
+        i = 0;
+        j = 0;
+        k = 0;
+        while (i < previous.rowsByRelease.length || j < added.length) {
+            if (i < previous.rowsByRelease.length && changed[previous.rowsByRelease[i]]) {
+                i++;
+                continue;
+            }
+            boolean takeOld = j == added.length || (i < previous.rowsByRelease.length
+                    && compareRelease(previous.releaseKeys[i], previous.rowsByRelease[i], added[j]) <= 0);
+            rowsByRelease[k] = takeOld ? previous.rowsByRelease[i] : added[j];
+            releaseKeys[k++] = takeOld ? previous.releaseKeys[i++] : table.getReleaseDay(added[j++]);
+        }
+    }
+
+    /**
+     * Build the indexes of a table
+     * 
+     * @param table
+     * @return CarIndex
+     */
+    public static CarIndex build(CarTable table) {
+        return new CarIndex(table);
+    }
+
+    /**
+     * Index a newer version of the indexed table without building the indexes again
+     * 
+     * @param table the new version, the rows before firstNewRow are the rows of the indexed table
+     * @param firstNewRow the first row appended after the indexed table
+     * @param changedRows old rows whose release date changed
+     * @return the index of the new table
+     */
+    public CarIndex update(CarTable table, int firstNewRow, int[] changedRows) {
+        if (firstNewRow != this.table.size() || table.size() < firstNewRow) {
+            throw new IllegalArgumentException("The new table must start with the " + this.table.size() + " indexed rows");
+        }
+        return new CarIndex(this, table, firstNewRow, changedRows);
+    }
+
+    public CarTable getTable() {
+        return table;
+    }
+
+    /**
+     * Filter based on type and value, with the same result as {@link CarFilter#filter(java.util.stream.Stream, String, String)}
+     * 
+     * @param type
+     * @param value
+     * @return the matching rows, in table order
+     */
+    public int[] filter(String type, String value) {
+        String[] parts = value.split(",");
+
+        switch (type) {
+            case AppConstant.FILTER_BRAND_PRICE:
+                return brandWithUsdPrice(parts[0], Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+
+            case AppConstant.FILTER_BRAND_RELEASE:
+                int releaseDay = (int) CarFilter.parseDate(parts[1]).toEpochDay();
+                return brandReleasedBetween(parts[0], releaseDay, releaseDay);
+
+            default:
+                throw new IllegalArgumentException("Unsupported filter type: " + type);
+        }
+    }
+
+    /**
+     * @param brand
+     * @return the rows of the brand ignoring case, in table order
+     */
+    public int[] brand(String brand) {
+        int[] rows = rowsByBrand.get(fold(brand));
+        return rows != null ? rows.clone() : NO_ROWS;
+    }
+
+    /**
+     * @param min
+     * @param max
+     * @return the rows whose USD price (0 when missing) is between min and max, in table order
+     */
+    public int[] usdPriceBetween(double min, double max) {
+        int from = lowerBound(usdKeys, min);
+        int to = upperBound(usdKeys, max);
+        return sortedSlice(rowsByUsd, from, to);
+    }
+
+    /**
+     * @param fromDay
+     * @param toDay
+     * @return the rows released between the epoch days, both included, in table order
+     */
+    public int[] releasedBetween(int fromDay, int toDay) {
+        int from = lowerBound(releaseKeys, fromDay);
+        int to = upperBound(releaseKeys, toDay);
+        return sortedSlice(rowsByRelease, from, to);
+    }
+
+    /**
+     * Intersect the brand rows with a USD price range, walking whichever side is smaller
+     */
+    private int[] brandWithUsdPrice(String brand, double min, double max) {
+        int[] brandRows = rowsByBrand.getOrDefault(fold(brand), NO_ROWS);
+        int from = lowerBound(usdKeys, min);
+        int to = upperBound(usdKeys, max);
+        if (from >= to || brandRows.length == 0) {
+            return NO_ROWS;
+        }
+
+        if (brandRows.length <= to - from) {
+            return Arrays.stream(brandRows)
+                    .filter(row -> usdPrice(row) >= min && usdPrice(row) <= max)
+                    .toArray();
+        }
+        boolean[] brandCodes = brandCodes(brand);
+        return Arrays.stream(sortedSlice(rowsByUsd, from, to))
+                .filter(row -> table.getBrandCode(row) >= 0 && brandCodes[table.getBrandCode(row)])
+                .toArray();
+    }
+
+    /**
+     * Intersect the brand rows with a release date range, walking whichever side is smaller
+     */
+    private int[] brandReleasedBetween(String brand, int fromDay, int toDay) {
+        int[] brandRows = rowsByBrand.getOrDefault(fold(brand), NO_ROWS);
+        int from = lowerBound(releaseKeys, fromDay);
+        int to = upperBound(releaseKeys, toDay);
+        if (from >= to || brandRows.length == 0) {
+            return NO_ROWS;
+        }
+
+        if (brandRows.length <= to - from) {
+            return Arrays.stream(brandRows)
+                    .filter(row -> table.getReleaseDay(row) != CarTable.NO_DATE
+                            && table.getReleaseDay(row) >= fromDay && table.getReleaseDay(row) <= toDay)
+                    .toArray();
+        }
+        boolean[] brandCodes = brandCodes(brand);
+        return Arrays.stream(sortedSlice(rowsByRelease, from, to))
+                .filter(row -> table.getBrandCode(row) >= 0 && brandCodes[table.getBrandCode(row)])
+                .toArray();
+    }
+
+    private boolean[] brandCodes(String brand) {
+        return table.getBrands().matchIgnoreCase(brand);
+    }
+
+    /**
+     * Order of the release index: by release day, equal days in row order
+     */
+    private int compareRelease(int oldDay, int oldRow, int newRow) {
+        int byDay = Integer.compare(oldDay, table.getReleaseDay(newRow));
+        return byDay != 0 ? byDay : Integer.compare(oldRow, newRow);
+    }
+
+    private double usdPrice(int row) {
+        return table.getPrice(row, usdColumn, 0.0);
+    }
+
+    /**
+     * @return per brand code the rows from the first row on with that brand, in row order
+     */
+    private static int[][] rowsByBrandCode(CarTable table, int firstRow) {
+        int[] rowCount = new int[table.getBrands().size()];
+        for (int row = firstRow; row < table.size(); row++) {
+            if (table.getBrandCode(row) >= 0) rowCount[table.getBrandCode(row)]++;
+        }
+        int[][] brandRows = new int[rowCount.length][];
+        for (int code = 0; code < rowCount.length; code++) {
+            brandRows[code] = new int[rowCount[code]];
+            rowCount[code] = 0;
+        }
+        for (int row = firstRow; row < table.size(); row++) {
+            int code = table.getBrandCode(row);
+            if (code >= 0) brandRows[code][rowCount[code]++] = row;
+        }
+        return brandRows;
+    }
+
+    private static int[] sortedSlice(int[] rows, int from, int to) {
+        if (from >= to) return NO_ROWS;
+        int[] slice = Arrays.copyOfRange(rows, from, to);
+        Arrays.sort(slice);
+        return slice;
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        int[] merged = new int[a.length + b.length];
+        System.arraycopy(a, 0, merged, 0, a.length);
+        System.arraycopy(b, 0, merged, a.length, b.length);
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    /**
+     * Fold a String so two Strings are equal after folding exactly when equalsIgnoreCase says so
+     */
+    private static String fold(String value) {
+        char[] chars = value.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+
+    private static int lowerBound(double[] keys, double key) {
+        int low = 0, high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] < key) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    private static int upperBound(double[] keys, double key) {
+        int low = 0, high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] <= key) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    private static int lowerBound(int[] keys, int key) {
+        int low = 0, high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] < key) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    private static int upperBound(int[] keys, int key) {
+        int low = 0, high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] <= key) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+}
@@ -1,16 +1,17 @@
 package app.service;
 
 import app.model.Car;
-import org.w3c.dom.*;
+import app.model.CarTable;
 
-import javax.xml.parsers.*;
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * This class used for parsing the CSV and XML file
@@ -29,100 +30,187 @@ public class CarParser {
      * @throws Exception
      */
     public static List<Car> parse(String xmlFilePath, String csvFilePath) throws Exception {
-        List<Car> cars = parseXml(xmlFilePath);
-        Map<String, String> brandDates = parseCsv(csvFilePath);
+        try (Stream<Car> cars = stream(xmlFilePath, csvFilePath)) {
+            return cars.collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Parsing the xml and csv file into a column oriented table
+     * 
+     * @param xmlFilePath
+     * @param csvFilePath
+     * @param threads
+     * @return CarTable
+     * @throws Exception
+     */
+    public static CarTable parseTable(String xmlFilePath, String csvFilePath, int threads) throws Exception {
+        return parseTable(xmlFilePath, csvFilePath, threads, ModelBrandTable.defaults());
+    }
+
+    /**
+     * Parsing the xml and csv file into a column oriented table, finding the brands in the given models
+     * 
+     * @param xmlFilePath
+     * @param csvFilePath
+     * @param threads
+     * @param models
+     * @return CarTable
+     * @throws Exception
+     */
+    public static CarTable parseTable(String xmlFilePath, String csvFilePath, int threads, ModelBrandTable models) throws Exception {
+        try (Stream<Car> cars = stream(xmlFilePath, csvFilePath, threads, models)) {
+            return CarTable.of(cars);
+        }
+    }
+
+    /**
+     * Streaming the cars from the xml file, joined with the brand release dates of the csv file.
+     * The xml file is read lazily, so the stream must be closed to release the file
+     * 
+     * @param xmlFilePath
+     * @param csvFilePath
+     * @return Stream Car Objects
+     * @throws Exception
+     */
+    public static Stream<Car> stream(String xmlFilePath, String csvFilePath) throws Exception {
+        return stream(xmlFilePath, csvFilePath, 1);
+    }
+
+    /**
+     * Streaming the cars like {@link #stream(String, String)}, but with more than one thread the xml file
+     * is split at the <car> elements and the parts are parsed in parallel. The cars keep the file order
+     * 
+     * @param xmlFilePath
+     * @param csvFilePath
+     * @param threads
+     * @return Stream Car Objects
+     * @throws Exception
+     */
+    public static Stream<Car> stream(String xmlFilePath, String csvFilePath, int threads) throws Exception {
+        return stream(xmlFilePath, csvFilePath, threads, ModelBrandTable.defaults());
+    }
+
+    /**
+     * Streaming the cars like {@link #stream(String, String, int)}, finding the brand of every model
+     * in the given models instead of the built in ones
+     * 
+     * @param xmlFilePath
+     * @param csvFilePath
+     * @param threads
+     * @param models
+     * @return Stream Car Objects
+     * @throws Exception
+     */
+    public static Stream<Car> stream(String xmlFilePath, String csvFilePath, int threads, ModelBrandTable models) throws Exception {
+        return streamXml(xmlFilePath, parseCsv(csvFilePath), threads, models);
+    }
+
+    /**
+     * Streaming the cars of many xml files, joined with the brand release dates of all csv files,
+     * where a brand of a later csv file replaces the same brand of an earlier one. With more than one
+     * thread the xml files are parsed at the same time; the cars keep the order of the files
+     * 
+     * @param xmlFilePaths
+     * @param csvFilePaths
+     * @param threads
+     * @param models
+     * @return Stream Car Objects
+     * @throws Exception
+     */
+    public static Stream<Car> stream(List<String> xmlFilePaths, List<String> csvFilePaths, int threads, ModelBrandTable models) throws Exception {
+        Map<String, String> brandDates = parseCsv(csvFilePaths);
+        if (xmlFilePaths.size() == 1) {
+            return streamXml(xmlFilePaths.get(0), brandDates, threads, models);
+        }
+        return MultiFileCarParser.stream(xmlFilePaths, brandDates, models, threads);
+    }
+
+    /**
+     * Parsing many xml and csv files into a column oriented table, see {@link #stream(List, List, int, ModelBrandTable)}
+     * 
+     * @param xmlFilePaths
+     * @param csvFilePaths
+     * @param threads
+     * @param models
+     * @return CarTable
+     * @throws Exception
+     */
+    public static CarTable parseTable(List<String> xmlFilePaths, List<String> csvFilePaths, int threads, ModelBrandTable models) throws Exception {
+        try (Stream<Car> cars = stream(xmlFilePaths, csvFilePaths, threads, models)) {
+            return CarTable.of(cars);
+        }
+    }
 
-        for (Car car : cars) {
-            String brand = mapModelToBrand(car.getModel());
+    static Stream<Car> streamXml(String xmlFilePath, Map<String, String> brandDates, int threads, ModelBrandTable models) throws Exception {
+        // A compressed file cannot be split, it is decompressed on its own thread instead
+        if (threads > 1 && !Compression.isCompressed(xmlFilePath)) {
+            return ParallelCarParser.stream(xmlFilePath, brandDates, models, threads);
+        }
+
+        CarXmlReader reader = new CarXmlReader(xmlFilePath);
+        return StreamSupport.stream(
+                        Spliterators.spliteratorUnknownSize(reader, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(reader::close)
+                .map(brandJoiner(brandDates, models));
+    }
+
+    /**
+     * Creating the function that sets the brand and release date of a parsed car. The parsed dates
+     * are cached inside the function in a concurrent map, since a sequentially parsed stream may
+     * still be joined on many threads once it is made parallel, e.g. by --aggregate
+     * 
+     * @param brandDates
+     * @param models
+     * @return the join function
+     */
+    static UnaryOperator<Car> brandJoiner(Map<String, String> brandDates, ModelBrandTable models) {
+        Map<String, LocalDate> releaseDates = new ConcurrentHashMap<>();
+        return car -> {
+            String brand = models.brandOf(car.getModel());
             car.setBrand(brand);
 
             String releaseDateStr = brandDates.get(brand);
             if (releaseDateStr != null) {
-                car.setReleaseDate(LocalDate.parse(releaseDateStr, CSV_DATE_FORMAT));
+                car.setReleaseDate(releaseDates.computeIfAbsent(brand, b -> parseReleaseDate(releaseDateStr)));
             }
-        }
-        return cars;
+            return car;
+        };
     }
 
-    private static List<Car> parseXml(String filePath) throws Exception {
-        List<Car> cars = new ArrayList<>();
-        File xmlFile = new File(filePath);
-        DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-        Document doc = dBuilder.parse(xmlFile);
-        doc.getDocumentElement().normalize();
-
-        NodeList carNodes = doc.getElementsByTagName("car");
-        for (int i = 0; i < carNodes.getLength(); i++) {
-            Node carNode = carNodes.item(i);
-            if (carNode.getNodeType() == Node.ELEMENT_NODE) {
-                Element carElement = (Element) carNode;
-                Car car = new Car();
-                car.setType(carElement.getElementsByTagName("type").item(0).getTextContent());
-                car.setModel(carElement.getElementsByTagName("model").item(0).getTextContent());
-
-                Node priceNode = carElement.getElementsByTagName("price").item(0);
-                if (priceNode instanceof Element) {
-                    Element priceElement = (Element) priceNode;
-                    String currency = priceElement.getAttribute("currency");
-                    double value = Double.parseDouble(priceElement.getTextContent());
-                    car.getPrices().put(currency, value);
-                }
+    /**
+     * @param releaseDateStr a release date of the csv file
+     * @return LocalDate
+     */
+    static LocalDate parseReleaseDate(String releaseDateStr) {
+        return LocalDate.parse(releaseDateStr, CSV_DATE_FORMAT);
+    }
 
-                NodeList pricesNodes = carElement.getElementsByTagName("prices");
-                if (pricesNodes.getLength() > 0) {
-                    Element pricesElement = (Element) pricesNodes.item(0);
-                    NodeList priceList = pricesElement.getElementsByTagName("price");
-                    for (int j = 0; j < priceList.getLength(); j++) {
-                        Element priceEl = (Element) priceList.item(j);
-                        String currency = priceEl.getAttribute("currency");
-                        double value = Double.parseDouble(priceEl.getTextContent());
-                        car.getPrices().put(currency, value);
-                    }
+    static Map<String, String> parseCsv(String filePath) throws IOException {
+        Map<String, String> brandDates = new HashMap<>();
+        try (CsvReader reader = new CsvReader(filePath)) {
+            boolean header = true;
+            while (reader.next()) {
+                if (header) {
+                    header = false;
+                    continue;
                 }
-
-                cars.add(car);
+                reader.unwrapRecord();
+                if (reader.fieldCount() == 2)
+                    brandDates.put(reader.internedField(0), reader.internedField(1));
             }
         }
-        return cars;
+        return brandDates;
     }
 
-    private static Map<String, String> parseCsv(String filePath) throws IOException {
+    static Map<String, String> parseCsv(List<String> filePaths) throws IOException {
+        if (filePaths.size() == 1) {
+            return parseCsv(filePaths.get(0));
+        }
         Map<String, String> brandDates = new HashMap<>();
-        List<String> lines = Files.readAllLines(Paths.get(filePath));
-        for (int i = 1; i < lines.size(); i++) {
-            String line = lines.get(i);
-            String[] parts = line.replace("\"", "").split(",");
-            if (parts.length == 2)
-                brandDates.put(parts[0], parts[1]);
+        for (String filePath : filePaths) {
+            brandDates.putAll(parseCsv(filePath));
         }
         return brandDates;
     }
-
-    private static String mapModelToBrand(String model) {
-        switch (model) {
-            case "RAV4":
-                return "Toyota";
-            case "Civic":
-                return "Honda";
-            case "F-150":
-                return "Ford";
-            case "Model X":
-                return "Tesla";
-            case "330i":
-                return "BMW";
-            case "Q5":
-                return "Audi";
-            case "Silverado":
-                return "Chevrolet";
-            case "C-Class":
-                return "Mercedes-Benz";
-            case "Rogue":
-                return "Nissan";
-            case "Elantra":
-                return "Hyundai";
-            default:
-                return "Unknown";
-        }
-    }
 }
@@ -0,0 +1,431 @@
+package app.service;
+
+import app.model.CarTable;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * This class used for saving the joined cars of an xml and csv file to a binary snapshot, so the
+ * next run can load the snapshot instead of parsing both files again. The snapshot keeps the
+ * columns of a {@link CarTable}: the dictionaries of brand, type and model, the codes and epoch
+ * days as int columns, and per currency a bitmap with only the present prices packed after it.
+ * <p>
+ * The size, last modified time and CRC32C of both source files, and the checksum of the
+ * {@link ModelBrandTable} the brands came from, are written into the snapshot. When any of them is
+ * different, or the snapshot was written by another format version, the snapshot is stale and is
+ * rebuilt from the source files. A source file with the size and last modified time it had is
+ * trusted without reading it, unless it was modified within {@link #RACY_MILLIS} of the snapshot
+ * being written, where an edit could keep both; only then, or when the time alone changed, is it
+ * checksummed again. The snapshot ends with a CRC32C of everything before it, computed while its
+ * sections are read, a damaged snapshot is rebuilt as well.
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+public class CarSnapshot {
+
+    private static final int MAGIC = 0x43415253; // "CARS"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 4 + 2 * (8 + 8 + 4) + 4 + 4 + 8;
+    private static final int WRITE_BUFFER = 1 << 20;
+    private static final long MAX_WINDOW = 1L << 30;
+    /** Beyond the coarsest last modified time of common file systems */
+    private static final long RACY_MILLIS = 2000;
+
+    private CarSnapshot() {
+    }
+
+    /**
+     * Load the cars from the snapshot, when it is missing or stale the xml and csv file are parsed
+     * and the snapshot is written for the next run
+     * 
+     * @param xmlFilePath
+     * @param csvFilePath
+     * @param models
+     * @param snapshotPath
+     * @param threads used to parse the xml file when the snapshot is rebuilt
+     * @return CarTable
+     * @throws Exception
+     */
+    public static CarTable load(String xmlFilePath, String csvFilePath, ModelBrandTable models, String snapshotPath, int threads) throws Exception {
+        CarTable table = read(xmlFilePath, csvFilePath, models, snapshotPath);
+        if (table != null) {
+            return table;
+        }
+        table = CarParser.parseTable(xmlFilePath, csvFilePath, threads, models);
+        write(table, xmlFilePath, csvFilePath, models, snapshotPath);
+        return table;
+    }
+
+    /**
+     * Read the snapshot
+     * 
+     * @param xmlFilePath
+     * @param csvFilePath
+     * @param models
+     * @param snapshotPath
+     * @return the table, or null when the snapshot is missing, unreadable or stale
+     * @throws IOException when a source file can not be read
+     */
+    public static CarTable read(String xmlFilePath, String csvFilePath, ModelBrandTable models, String snapshotPath) throws IOException {
+        Path snapshot = Paths.get(snapshotPath);
+        if (!Files.isRegularFile(snapshot)) {
+            return null;
+        }
+        Path xml = Paths.get(xmlFilePath);
+        Path csv = Paths.get(csvFilePath);
+        BasicFileAttributes xmlAttributes = Files.readAttributes(xml, BasicFileAttributes.class);
+        BasicFileAttributes csvAttributes = Files.readAttributes(csv, BasicFileAttributes.class);
+        long written = Files.getLastModifiedTime(snapshot).toMillis();
+
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE + 4) {
+                return null;
+            }
+            SectionReader in = new SectionReader(channel);
+            ByteBuffer header = in.section(HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION
+                    || !Fingerprint.read(header).matches(xml, xmlAttributes, written)
+                    || !Fingerprint.read(header).matches(csv, csvAttributes, written)
+                    || header.getInt() != models.checksum()) {
+                return null;
+            }
+            int rows = header.getInt();
+            ByteBuffer strings = in.section(header.getLong());
+            List<String> brands = readStrings(strings);
+            List<String> types = readStrings(strings);
+            List<String> modelNames = readStrings(strings);
+            List<String> currencies = readStrings(strings);
+
+            int[] brandCodes = in.ints(rows);
+            int[] typeCodes = in.ints(rows);
+            int[] modelCodes = in.ints(rows);
+            int[] releaseDays = in.ints(rows);
+            double[][] prices = new double[currencies.size()][];
+            long[][] pricePresent = new long[currencies.size()][];
+            for (int column = 0; column < currencies.size(); column++) {
+                pricePresent[column] = in.longs(bitmapLength(rows));
+                double[] packed = in.doubles(in.section(4).getInt());
+                prices[column] = unpack(packed, pricePresent[column], rows);
+            }
+            if (!in.checksumMatches()) {
+                return null;
+            }
+            return CarTable.ofColumns(brands, types, modelNames, brandCodes, typeCodes, modelCodes, releaseDays,
+                    currencies, prices, pricePresent);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            // A damaged or truncated snapshot is rebuilt like a stale one
+            return null;
+        }
+    }
+
+    /**
+     * Write the table as the snapshot of the xml and csv file. The snapshot is written to a
+     * temporary file first and then moved over the old one, so a reader never sees half of it
+     * 
+     * @param table
+     * @param xmlFilePath
+     * @param csvFilePath
+     * @param models the models the brands of the table were found in
+     * @param snapshotPath
+     * @throws IOException
+     */
+    public static void write(CarTable table, String xmlFilePath, String csvFilePath, ModelBrandTable models, String snapshotPath) throws IOException {
+        Path snapshot = Paths.get(snapshotPath).toAbsolutePath();
+        Fingerprint xml = Fingerprint.of(Paths.get(xmlFilePath));
+        Fingerprint csv = Fingerprint.of(Paths.get(csvFilePath));
+        byte[] strings = writeStrings(table);
+
+        Path temporary = Files.createTempFile(snapshot.getParent(), snapshot.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            SectionWriter out = new SectionWriter(channel);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            xml.write(out);
+            csv.write(out);
+            out.putInt(models.checksum());
+            out.putInt(table.size());
+            out.putLong(strings.length);
+            out.put(strings);
+
+            for (int row = 0; row < table.size(); row++) out.putInt(table.getBrandCode(row));
+            for (int row = 0; row < table.size(); row++) out.putInt(table.getTypeCode(row));
+            for (int row = 0; row < table.size(); row++) out.putInt(table.getModelCode(row));
+            for (int row = 0; row < table.size(); row++) out.putInt(table.getReleaseDay(row));
+            for (int column = 0; column < table.getCurrencies().size(); column++) {
+                long[] bitmap = new long[bitmapLength(table.size())];
+                int present = 0;
+                for (int row = 0; row < table.size(); row++) {
+                    if (table.hasPrice(row, column)) {
+                        bitmap[row >>> 6] |= 1L << row;
+                        present++;
+                    }
+                }
+                for (long word : bitmap) out.putLong(word);
+                out.putInt(present);
+                for (int row = 0; row < table.size(); row++) {
+                    if (table.hasPrice(row, column)) out.putDouble(table.getPrice(row, column, 0.0));
+                }
+            }
+            out.putChecksum();
+            channel.force(false);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static byte[] writeStrings(CarTable table) {
+        List<List<String>> dictionaries = List.of(table.getBrands().values(), table.getTypes().values(),
+                table.getModels().values(), table.getCurrencies());
+        int size = 0;
+        List<byte[]> encoded = new ArrayList<>();
+        for (List<String> dictionary : dictionaries) {
+            size += 4;
+            for (String value : dictionary) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                encoded.add(bytes);
+                size += 4 + bytes.length;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        int next = 0;
+        for (List<String> dictionary : dictionaries) {
+            buffer.putInt(dictionary.size());
+            for (int i = 0; i < dictionary.size(); i++) {
+                byte[] bytes = encoded.get(next++);
+                buffer.putInt(bytes.length);
+                buffer.put(bytes);
+            }
+        }
+        return buffer.array();
+    }
+
+    private static List<String> readStrings(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            values.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+
+    private static double[] unpack(double[] packed, long[] bitmap, int rows) {
+        double[] column = new double[rows];
+        int next = 0;
+        for (int row = 0; row < rows; row++) {
+            if ((bitmap[row >>> 6] & (1L << row)) != 0) {
+                column[row] = packed[next++];
+            }
+        }
+        if (next != packed.length) {
+            throw new IllegalArgumentException("Price bitmap does not match the packed prices");
+        }
+        return column;
+    }
+
+    private static int bitmapLength(int rows) {
+        return (rows + 63) >>> 6;
+    }
+
+    /**
+     * Size, last modified time and CRC32C of a source file
+     */
+    private static final class Fingerprint {
+        private final long size;
+        private final long lastModified;
+        private final int crc;
+
+        private Fingerprint(long size, long lastModified, int crc) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.crc = crc;
+        }
+
+        static Fingerprint of(Path file) throws IOException {
+            CRC32C crc = new CRC32C();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size();
+                for (long position = 0; position < size; position += MAX_WINDOW) {
+                    crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAX_WINDOW, size - position)));
+                }
+                return new Fingerprint(size, Files.getLastModifiedTime(file).toMillis(), (int) crc.getValue());
+            }
+        }
+
+        static Fingerprint read(ByteBuffer buffer) {
+            return new Fingerprint(buffer.getLong(), buffer.getLong(), buffer.getInt());
+        }
+
+        /**
+         * @param file
+         * @param attributes the current attributes of the file
+         * @param written when the snapshot holding this fingerprint was written
+         * @return true when the file still has the content this fingerprint was taken of
+         * @throws IOException
+         */
+        boolean matches(Path file, BasicFileAttributes attributes, long written) throws IOException {
+            if (attributes.size() != size) {
+                return false;
+            }
+            if (attributes.lastModifiedTime().toMillis() == lastModified && written - lastModified > RACY_MILLIS) {
+                return true;
+            }
+            return of(file).crc == crc;
+        }
+
+        void write(SectionWriter out) throws IOException {
+            out.putLong(size);
+            out.putLong(lastModified);
+            out.putInt(crc);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Fingerprint)) return false;
+            Fingerprint other = (Fingerprint) o;
+            return size == other.size && lastModified == other.lastModified && crc == other.crc;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(size) * 31 + crc;
+        }
+    }
+
+    /**
+     * Maps the snapshot one section after the other, so no single mapping has to cover the whole
+     * file, keeping the CRC32C of all read bytes
+     */
+    private static class SectionReader {
+        private final FileChannel channel;
+        private final CRC32C crc = new CRC32C();
+        private long position;
+
+        SectionReader(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        MappedByteBuffer section(long length) throws IOException {
+            if (length < 0 || length > Integer.MAX_VALUE || position + length > channel.size()) {
+                throw new IOException("Snapshot is truncated");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            crc.update(buffer.duplicate());
+            position += length;
+            return buffer;
+        }
+
+        /**
+         * @return true when the checksum comes right after the read sections and matches them
+         */
+        boolean checksumMatches() throws IOException {
+            if (position + 4 != channel.size()) {
+                return false;
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, 4).getInt() == (int) crc.getValue();
+        }
+
+        int[] ints(int count) throws IOException {
+            MappedByteBuffer section = section(4L * count);
+            int[] values = new int[count];
+            section.asIntBuffer().get(values);
+            return values;
+        }
+
+        long[] longs(int count) throws IOException {
+            MappedByteBuffer section = section(8L * count);
+            long[] values = new long[count];
+            section.asLongBuffer().get(values);
+            return values;
+        }
+
+        double[] doubles(int count) throws IOException {
+            MappedByteBuffer section = section(8L * count);
+            double[] values = new double[count];
+            section.asDoubleBuffer().get(values);
+            return values;
+        }
+    }
+
+    /**
+     * Writes big endian values through one reused buffer, keeping the CRC32C of all written bytes
+     */
+    private static class SectionWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER);
+        private final CRC32C crc = new CRC32C();
+
+        SectionWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            ensureRemaining(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensureRemaining(8);
+            buffer.putLong(value);
+        }
+
+        void putDouble(double value) throws IOException {
+            ensureRemaining(8);
+            buffer.putDouble(value);
+        }
+
+        void put(byte[] bytes) throws IOException {
+            flush();
+            crc.update(bytes);
+            ByteBuffer source = ByteBuffer.wrap(bytes);
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+        }
+
+        /**
+         * Write the CRC32C of everything written so far and flush
+         */
+        void putChecksum() throws IOException {
+            flush();
+            buffer.putInt((int) crc.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void ensureRemaining(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+}
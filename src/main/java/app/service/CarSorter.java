@@ -2,19 +2,46 @@ package app.service;
 
 import app.constant.AppConstant;
 import app.model.Car;
+import app.model.CarTable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.function.BiFunction;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntToLongFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
- * This class used for sorting 
+ * This class used for sorting. Up to {@link #PARALLEL_SORT_THRESHOLD} cars are sorted with a
+ * comparator; above it the sort key of every car, its release day or price, is read once into a
+ * primitive array that is sorted in parallel, and the cars are reordered once. Both give the same
+ * order, equal cars keep the order they came in.
  * 
  * @author Angga Bayu S (anggabs86@gmail.com)
  */
 public class CarSorter {
 
+    /** The number of cars from which the primitive key sort is used */
+    static final int PARALLEL_SORT_THRESHOLD = 1 << 16;
+
+    private static final Comparator<Car> YEAR_DESCENDING = new Comparator<Car>() {
+        @Override
+        public int compare(Car c1, Car c2) {
+            if (c1.getReleaseDate() == null && c2.getReleaseDate() == null) return 0;
+            if (c1.getReleaseDate() == null) return 1;
+            if (c2.getReleaseDate() == null) return -1;
+            return c2.getReleaseDate().compareTo(c1.getReleaseDate()); // descending
+        }
+    };
+
     /**
      * Sorting the cars based on sortOption
      * 
@@ -26,26 +53,11 @@ public class CarSorter {
 
         switch (sortOption.toLowerCase()) {
             case AppConstant.SORTER_YEAR:
-                Collections.sort(cars, new Comparator<Car>() {
-                    @Override
-                    public int compare(Car c1, Car c2) {
-                        if (c1.getReleaseDate() == null && c2.getReleaseDate() == null) return 0;
-                        if (c1.getReleaseDate() == null) return 1;
-                        if (c2.getReleaseDate() == null) return -1;
-                        return c2.getReleaseDate().compareTo(c1.getReleaseDate()); // descending
-                    }
-                });
+                sortList(cars, YEAR_DESCENDING, car -> yearKey(car));
                 break;
 
             case AppConstant.SORTER_PRICE:
-                Collections.sort(cars, new Comparator<Car>() {
-                    @Override
-                    public int compare(Car c1, Car c2) {
-                        double p1 = c1.getPrices().getOrDefault("USD", 0.0);
-                        double p2 = c2.getPrices().getOrDefault("USD", 0.0);
-                        return Double.compare(p2, p1); // descending
-                    }
-                });
+                sortList(cars, priceDescending("USD"), priceKey("USD"));
                 break;
 
             case AppConstant.SORTER_SUV_EUR:
@@ -65,6 +77,283 @@ public class CarSorter {
         }
     }
 
+    /**
+     * Sorting the stream based on sortOption. Sorting has to see every car before the first one
+     * can be emitted, so a sorted stream buffers the cars in a {@link CarTable} and sorts its rows;
+     * without sortOption it stays lazy
+     * 
+     * @param cars
+     * @param sortOption
+     * @return Stream Car Object
+     */
+    public static Stream<Car> sort(Stream<Car> cars, String sortOption) {
+        if (sortOption == null || sortOption.trim().equalsIgnoreCase("")) return cars;
+        if (!isSupported(sortOption)) {
+            throw new IllegalArgumentException("Unsupported sort option: " + sortOption);
+        }
+
+        return StreamSupport.stream(() -> {
+            CarTable table = CarTable.of(cars);
+            int[] rows = IntStream.range(0, table.size()).toArray();
+            return table.stream(sort(table, rows, sortOption)).spliterator();
+        }, Spliterator.ORDERED | Spliterator.NONNULL, false).onClose(cars::close);
+    }
+
+    /**
+     * Sorting the stream based on sortOption and keeping only the first limit cars. With a sortOption
+     * the cars go through a bounded heap, so only limit cars are held at any time instead of all of them;
+     * without sortOption the stream simply stops after limit cars
+     * 
+     * @param cars
+     * @param sortOption
+     * @param limit
+     * @return Stream Car Object, at most limit cars
+     */
+    public static Stream<Car> sort(Stream<Car> cars, String sortOption, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must not be negative: " + limit);
+        }
+        if (sortOption == null || sortOption.trim().equalsIgnoreCase("")) return cars.limit(limit);
+
+        return sortWith(cars, sortOption, (selected, comparator) -> topK(selected, comparator, limit));
+    }
+
+    /**
+     * Sorting the stream based on sortOption without holding more than memoryBudget bytes of cars.
+     * Whenever the budget is used up the cars collected so far are sorted and spilled to a temporary
+     * file, and the files are merged while the result is read. Close the stream to remove the files
+     * when it is not read to the end
+     * 
+     * @param cars
+     * @param sortOption
+     * @param memoryBudget
+     * @return Stream Car Object
+     */
+    public static Stream<Car> sortExternal(Stream<Car> cars, String sortOption, long memoryBudget) {
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive: " + memoryBudget);
+        }
+        if (sortOption == null || sortOption.trim().equalsIgnoreCase("")) return cars;
+
+        return sortWith(cars, sortOption, (selected, comparator) -> ExternalCarSort.sort(selected, comparator, memoryBudget));
+    }
+
+    /**
+     * @param sortOption
+     * @return the currency whose price sortOption compares, or null when it does not compare prices
+     */
+    public static String sortCurrency(String sortOption) {
+        if (sortOption == null) return null;
+
+        switch (sortOption.toLowerCase()) {
+            case AppConstant.SORTER_PRICE:
+            case AppConstant.SORTER_TRUCK_USD:
+                return "USD";
+            case AppConstant.SORTER_SUV_EUR:
+                return "EUR";
+            case AppConstant.SORTER_SEDAN_JPY:
+                return "JPY";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Pick the cars and the comparator of sortOption and hand them to the sorter
+     */
+    private static Stream<Car> sortWith(Stream<Car> cars, String sortOption,
+                                        BiFunction<Stream<Car>, Comparator<Car>, Stream<Car>> sorter) {
+        switch (sortOption.toLowerCase()) {
+            case AppConstant.SORTER_YEAR:
+                return sorter.apply(cars, YEAR_DESCENDING);
+
+            case AppConstant.SORTER_PRICE:
+                return sorter.apply(cars, priceDescending("USD"));
+
+            case AppConstant.SORTER_SUV_EUR:
+                return sorter.apply(cars.filter(c -> "SUV".equalsIgnoreCase(c.getType())), priceDescending("EUR"));
+
+            case AppConstant.SORTER_SEDAN_JPY:
+                return sorter.apply(cars.filter(c -> "Sedan".equalsIgnoreCase(c.getType())), priceDescending("JPY"));
+
+            case AppConstant.SORTER_TRUCK_USD:
+                return sorter.apply(cars.filter(c -> "Truck".equalsIgnoreCase(c.getType())), priceDescending("USD"));
+
+            default:
+                throw new IllegalArgumentException("Unsupported sort option: " + sortOption);
+        }
+    }
+
+    /**
+     * Keep the first k cars in comparator order with a heap whose top is the worst car kept so far.
+     * Equal cars are ordered by arrival, so the result is the head of what a stable sort would give
+     */
+    private static Stream<Car> topK(Stream<Car> cars, Comparator<Car> comparator, int k) {
+        if (k == 0) return Stream.empty();
+
+        Comparator<Ranked> order = Comparator.<Ranked, Car>comparing(r -> r.car, comparator)
+                .thenComparingLong(r -> r.sequence);
+        return StreamSupport.stream(() -> {
+            PriorityQueue<Ranked> heap = new PriorityQueue<>(Math.min(k, 1024) + 1, order.reversed());
+            long[] sequence = {0};
+            cars.forEachOrdered(car -> {
+                Ranked ranked = new Ranked(car, sequence[0]++);
+                if (heap.size() < k) {
+                    heap.add(ranked);
+                } else if (order.compare(ranked, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(ranked);
+                }
+            });
+            Ranked[] best = heap.toArray(new Ranked[0]);
+            Arrays.sort(best, order);
+            return Arrays.stream(best).map(r -> r.car).spliterator();
+        }, Spliterator.ORDERED | Spliterator.NONNULL, false).onClose(cars::close);
+    }
+
+    /**
+     * A car with its position in the input
+     */
+    private static class Ranked {
+        final Car car;
+        final long sequence;
+
+        Ranked(Car car, long sequence) {
+            this.car = car;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Sorting the rows of a table based on sortOption, comparing the primitive columns.
+     * The order is the same as {@link #sort(List, String)} gives for the same cars
+     * 
+     * @param table
+     * @param rows
+     * @param sortOption
+     * @return the sorted rows, the type sorts only keep the rows of their type
+     */
+    public static int[] sort(CarTable table, int[] rows, String sortOption) {
+        if (sortOption == null || sortOption.trim().equalsIgnoreCase("")) return rows;
+
+        int[] sorted;
+        switch (sortOption.toLowerCase()) {
+            case AppConstant.SORTER_YEAR:
+                if (rows.length >= PARALLEL_SORT_THRESHOLD) {
+                    return sortByKey(rows, row -> yearKey(table.getReleaseDay(row)));
+                }
+                sorted = rows.clone();
+                RowSort.mergeSort(sorted, (r1, r2) -> {
+                    int d1 = table.getReleaseDay(r1);
+                    int d2 = table.getReleaseDay(r2);
+                    if (d1 == CarTable.NO_DATE && d2 == CarTable.NO_DATE) return 0;
+                    if (d1 == CarTable.NO_DATE) return 1;
+                    if (d2 == CarTable.NO_DATE) return -1;
+                    return Integer.compare(d2, d1); // descending
+                });
+                return sorted;
+
+            case AppConstant.SORTER_PRICE:
+                if (rows.length >= PARALLEL_SORT_THRESHOLD) {
+                    return sortByKey(rows, priceKey(table, "USD"));
+                }
+                sorted = rows.clone();
+                RowSort.mergeSort(sorted, priceDescending(table, "USD"));
+                return sorted;
+
+            case AppConstant.SORTER_SUV_EUR:
+                return sortedAndFiltered(table, rows, "SUV", "EUR");
+
+            case AppConstant.SORTER_SEDAN_JPY:
+                return sortedAndFiltered(table, rows, "Sedan", "JPY");
+
+            case AppConstant.SORTER_TRUCK_USD:
+                return sortedAndFiltered(table, rows, "Truck", "USD");
+
+            default:
+                throw new IllegalArgumentException("Unsupported sort option: " + sortOption);
+        }
+    }
+
+    private static boolean isSupported(String sortOption) {
+        switch (sortOption.toLowerCase()) {
+            case AppConstant.SORTER_YEAR:
+            case AppConstant.SORTER_PRICE:
+            case AppConstant.SORTER_SUV_EUR:
+            case AppConstant.SORTER_SEDAN_JPY:
+            case AppConstant.SORTER_TRUCK_USD:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static int[] sortedAndFiltered(CarTable table, int[] rows, String type, String currency) {
+        boolean[] typeMatches = table.getTypes().matchIgnoreCase(type);
+        int[] filtered = Arrays.stream(rows)
+                .filter(row -> table.getTypeCode(row) >= 0 && typeMatches[table.getTypeCode(row)])
+                .toArray();
+        if (filtered.length >= PARALLEL_SORT_THRESHOLD) {
+            return sortByKey(filtered, priceKey(table, currency));
+        }
+        RowSort.mergeSort(filtered, priceDescending(table, currency));
+        return filtered;
+    }
+
+    /**
+     * Sort the rows by a primitive key per row, see {@link RowSort#orderByKey(long[])}
+     */
+    private static int[] sortByKey(int[] rows, IntToLongFunction key) {
+        long[] keys = new long[rows.length];
+        Arrays.parallelSetAll(keys, i -> key.applyAsLong(rows[i]));
+        int[] order = RowSort.orderByKey(keys);
+        int[] sorted = new int[rows.length];
+        Arrays.parallelSetAll(sorted, i -> rows[order[i]]);
+        return sorted;
+    }
+
+    /**
+     * Sort the cars with the comparator, or above the threshold by the key, which must give the same order
+     */
+    private static void sortList(List<Car> cars, Comparator<Car> comparator, ToLongFunction<Car> key) {
+        if (cars.size() < PARALLEL_SORT_THRESHOLD) {
+            Collections.sort(cars, comparator);
+            return;
+        }
+        Car[] unsorted = cars.toArray(new Car[0]);
+        long[] keys = new long[unsorted.length];
+        Arrays.parallelSetAll(keys, i -> key.applyAsLong(unsorted[i]));
+        int[] order = RowSort.orderByKey(keys);
+        for (int i = 0; i < order.length; i++) {
+            cars.set(i, unsorted[order[i]]);
+        }
+    }
+
+    /**
+     * Newest first, cars without a release date last
+     */
+    private static long yearKey(int releaseDay) {
+        return releaseDay == CarTable.NO_DATE ? Long.MAX_VALUE : -(long) releaseDay;
+    }
+
+    private static long yearKey(Car car) {
+        return car.getReleaseDate() == null ? Long.MAX_VALUE : -car.getReleaseDate().toEpochDay();
+    }
+
+    private static IntToLongFunction priceKey(CarTable table, String currency) {
+        int column = table.getCurrencyColumn(currency);
+        return row -> RowSort.descendingKey(table.getPrice(row, column, 0.0));
+    }
+
+    private static ToLongFunction<Car> priceKey(String currency) {
+        return car -> RowSort.descendingKey(car.getPrices().getOrDefault(currency, 0.0));
+    }
+
+    private static IntBinaryOperator priceDescending(CarTable table, String currency) {
+        int column = table.getCurrencyColumn(currency);
+        return (r1, r2) -> Double.compare(table.getPrice(r2, column, 0.0), table.getPrice(r1, column, 0.0)); // descending
+    }
+
     private static void replaceWithSortedAndFiltered(List<Car> cars, String type, String currency) {
         List<Car> filtered = new ArrayList<>();
         for (Car c : cars) {
@@ -73,16 +362,20 @@ public class CarSorter {
             }
         }
 
-        Collections.sort(filtered, new Comparator<Car>() {
+        sortList(filtered, priceDescending(currency), priceKey(currency));
+
+        cars.clear();
+        cars.addAll(filtered);
+    }
+
+    private static Comparator<Car> priceDescending(String currency) {
+        return new Comparator<Car>() {
             @Override
             public int compare(Car c1, Car c2) {
                 double p1 = c1.getPrices().getOrDefault(currency, 0.0);
                 double p2 = c2.getPrices().getOrDefault(currency, 0.0);
                 return Double.compare(p2, p1); // descending
             }
-        });
-
-        cars.clear();
-        cars.addAll(filtered);
+        };
     }
 }
@@ -0,0 +1,136 @@
+package app.service;
+
+import app.model.Car;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * This class used for streaming the cars out of the XML file one by one,
+ * so only the car being read is kept in memory
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+public class CarXmlReader implements Iterator<Car>, AutoCloseable {
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+
+    private final InputStream input;
+    private final XMLStreamReader reader;
+    private Car next;
+
+    /**
+     * Open the XML file for streaming, a gzip or zstd compressed file is decompressed on the way
+     * 
+     * @param filePath
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    public CarXmlReader(String filePath) throws IOException, XMLStreamException {
+        this(Compression.open(filePath));
+    }
+
+    /**
+     * Stream the cars from an already opened input, the input is closed together with this reader
+     * 
+     * @param input
+     * @throws XMLStreamException
+     */
+    public CarXmlReader(InputStream input) throws XMLStreamException {
+        this.input = input;
+        this.reader = XML_INPUT_FACTORY.createXMLStreamReader(input);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = readNext();
+            } catch (XMLStreamException e) {
+                throw new IllegalStateException("Malformed XML: " + e.getMessage(), e);
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public Car next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Car car = next;
+        next = null;
+        return car;
+    }
+
+    @Override
+    public void close() {
+        try {
+            reader.close();
+            input.close();
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Advance to the next <car> element and read it, the <price> elements are
+     * picked up both as direct children and inside the <prices> list
+     */
+    private Car readNext() throws XMLStreamException {
+        while (reader.hasNext()) {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT && "car".equals(reader.getLocalName())) {
+                return readCar();
+            }
+        }
+        return null;
+    }
+
+    private Car readCar() throws XMLStreamException {
+        Car car = new Car();
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                switch (reader.getLocalName()) {
+                    case "type":
+                        String type = reader.getElementText();
+                        if (car.getType() == null) car.setType(type);
+                        break;
+                    case "model":
+                        String model = reader.getElementText();
+                        if (car.getModel() == null) car.setModel(model);
+                        break;
+                    case "price":
+                        String currency = reader.getAttributeValue(null, "currency");
+                        double value = Double.parseDouble(reader.getElementText());
+                        car.getPrices().put(currency == null ? "" : currency, value);
+                        break;
+                    default:
+                        depth++;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else if (event == XMLStreamConstants.END_DOCUMENT) {
+                throw new XMLStreamException("Unexpected end of document inside <car>");
+            }
+        }
+        return car;
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+}
@@ -0,0 +1,237 @@
+package app.service;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+import java.io.BufferedInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This class used for reading and writing gzip and zstd compressed files. A compressed input is
+ * recognized by its first bytes, whatever the file is called, and is decompressed on its own
+ * thread into a few buffered chunks ahead of the reader, so decompressing and parsing run at the
+ * same time. Plain files are read as they are.
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+public class Compression {
+
+    public static final String CODEC_GZIP = "gzip";
+    public static final String CODEC_ZSTD = "zstd";
+
+    /** The file extensions of the codecs, used to find compressed files in a directory */
+    public static final String[] FILE_SUFFIXES = {".gz", ".zst"};
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int CHUNKS_AHEAD = 8;
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Find the codec of a file from its magic bytes
+     * 
+     * @param filePath
+     * @return gzip, zstd, or null when the file is not compressed
+     * @throws IOException
+     */
+    public static String detect(String filePath) throws IOException {
+        byte[] magic = new byte[4];
+        int read;
+        try (InputStream in = Files.newInputStream(Paths.get(filePath))) {
+            read = in.readNBytes(magic, 0, magic.length);
+        }
+        if (read >= 2 && magic[0] == (byte) 0x1F && magic[1] == (byte) 0x8B) {
+            return CODEC_GZIP;
+        }
+        if (read == 4 && magic[0] == (byte) 0x28 && magic[1] == (byte) 0xB5 && magic[2] == (byte) 0x2F
+                && magic[3] == (byte) 0xFD) {
+            return CODEC_ZSTD;
+        }
+        return null;
+    }
+
+    /**
+     * @param filePath
+     * @return true when the file is gzip or zstd compressed
+     * @throws IOException
+     */
+    public static boolean isCompressed(String filePath) throws IOException {
+        return detect(filePath) != null;
+    }
+
+    /**
+     * Open a file for reading, decompressed on a separate thread when it is compressed
+     * 
+     * @param filePath
+     * @return the plain content of the file
+     * @throws IOException
+     */
+    public static InputStream open(String filePath) throws IOException {
+        String codec = detect(filePath);
+        InputStream raw = new BufferedInputStream(Files.newInputStream(Paths.get(filePath)), CHUNK_SIZE);
+        if (codec == null) {
+            return raw;
+        }
+        return new DecompressingInputStream(filePath, codec, raw);
+    }
+
+    /**
+     * @param codec gzip or zstd, ignoring case
+     * @return true when the codec is supported
+     */
+    public static boolean isCodec(String codec) {
+        return CODEC_GZIP.equalsIgnoreCase(codec) || CODEC_ZSTD.equalsIgnoreCase(codec);
+    }
+
+    /**
+     * @param fileName
+     * @return the codec of the file extension, .gz or .zst, or null for any other extension
+     */
+    public static String codecOf(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".gz")) return CODEC_GZIP;
+        if (name.endsWith(".zst")) return CODEC_ZSTD;
+        return null;
+    }
+
+    /**
+     * Write through a compressor. The compressed stream is finished when the writer returns, but
+     * the given stream is only flushed, so it can be the standard output
+     * 
+     * @param out
+     * @param codec gzip, zstd, or null to write plain
+     * @param writer writes the plain content
+     * @throws UncheckedIOException when the compressor fails
+     */
+    public static void write(OutputStream out, String codec, Consumer<OutputStream> writer) {
+        if (codec == null) {
+            writer.accept(out);
+            return;
+        }
+        OutputStream target = new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+        try (OutputStream compressed = compressor(target, codec)) {
+            writer.accept(compressed);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write " + codec + " output: " + e.getMessage(), e);
+        }
+    }
+
+    private static OutputStream compressor(OutputStream out, String codec) throws IOException {
+        if (CODEC_GZIP.equalsIgnoreCase(codec)) {
+            return new GZIPOutputStream(out, OUTPUT_BUFFER_SIZE);
+        }
+        if (CODEC_ZSTD.equalsIgnoreCase(codec)) {
+            return new ZstdOutputStream(out);
+        }
+        throw new IllegalArgumentException("Unknown codec " + codec + ", allowed: gzip, zstd");
+    }
+
+    private static InputStream decompressor(InputStream in, String codec) throws IOException {
+        return CODEC_GZIP.equals(codec) ? new GZIPInputStream(in, CHUNK_SIZE) : new ZstdInputStream(in);
+    }
+
+    /**
+     * The plain content of a compressed file, decompressed by a producer thread into a bounded
+     * queue of chunks. The producer waits when the reader is {@link #CHUNKS_AHEAD} chunks behind
+     */
+    private static final class DecompressingInputStream extends InputStream {
+        private static final byte[] END = new byte[0];
+
+        private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(CHUNKS_AHEAD);
+        private final Thread producer;
+        private volatile IOException failure;
+        private byte[] chunk;
+        private int position;
+
+        DecompressingInputStream(String filePath, String codec, InputStream raw) {
+            String name = Paths.get(filePath).getFileName().toString();
+            producer = new Thread(() -> decompress(raw, codec, name), "decompress-" + name);
+            producer.setDaemon(true);
+            producer.start();
+        }
+
+        private void decompress(InputStream raw, String codec, String name) {
+            try (raw; InputStream in = decompressor(raw, codec)) {
+                while (true) {
+                    byte[] buffer = new byte[CHUNK_SIZE];
+                    int read = in.readNBytes(buffer, 0, CHUNK_SIZE);
+                    if (read == 0) break;
+                    chunks.put(read == CHUNK_SIZE ? buffer : Arrays.copyOf(buffer, read));
+                }
+            } catch (InterruptedException e) {
+                // The reader closed the stream
+                return;
+            } catch (IOException e) {
+                failure = new IOException("Failed to decompress " + name + ": " + e.getMessage(), e);
+            }
+            try {
+                chunks.put(END);
+            } catch (InterruptedException e) {
+                // The reader closed the stream
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) return -1;
+            return chunk[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!fill()) return -1;
+            int count = Math.min(len, chunk.length - position);
+            System.arraycopy(chunk, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        /**
+         * @return false at the end of the content
+         */
+        private boolean fill() throws IOException {
+            while (chunk != END && (chunk == null || position == chunk.length)) {
+                try {
+                    chunk = chunks.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while decompressing", e);
+                }
+                position = 0;
+            }
+            if (chunk == END && failure != null) {
+                throw failure;
+            }
+            return chunk != END;
+        }
+
+        @Override
+        public void close() {
+            producer.interrupt();
+            chunks.clear();
+        }
+    }
+}
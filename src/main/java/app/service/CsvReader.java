@@ -0,0 +1,334 @@
+package app.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * This class used for reading a CSV file record by record straight from a memory mapped buffer.
+ * The fields are only kept as byte offsets into the mapped file and are turned into a String
+ * when they are asked for. Quoting follows RFC 4180, and a UTF-8 byte order mark is skipped.
+ * A gzip or zstd compressed file cannot be mapped, it is decompressed into memory instead.
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+public class CsvReader implements AutoCloseable {
+
+    private static final long MAX_WINDOW = 1L << 30;
+    private static final int FLAG_QUOTED = 1;
+    private static final int FLAG_ESCAPED = 2;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final StringTable strings = new StringTable();
+
+    private ByteBuffer buffer;
+    private long windowStart;
+    private int position;
+
+    private int fieldCount;
+    private int[] fieldStart = new int[8];
+    private int[] fieldEnd = new int[8];
+    private int[] fieldFlags = new int[8];
+
+    /**
+     * Open and map the CSV file
+     * 
+     * @param filePath
+     * @throws IOException
+     */
+    public CsvReader(String filePath) throws IOException {
+        if (Compression.isCompressed(filePath)) {
+            byte[] content;
+            try (InputStream in = Compression.open(filePath)) {
+                content = in.readAllBytes();
+            }
+            this.channel = null;
+            this.fileSize = content.length;
+            this.buffer = ByteBuffer.wrap(content);
+        } else {
+            this.channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+            this.fileSize = channel.size();
+            map(0);
+        }
+        if (buffer.limit() >= 3 && buffer.get(0) == (byte) 0xEF && buffer.get(1) == (byte) 0xBB
+                && buffer.get(2) == (byte) 0xBF) {
+            position = 3;
+        }
+    }
+
+    /**
+     * Move to the next record
+     * 
+     * @return false when the end of the file is reached
+     * @throws IOException
+     */
+    public boolean next() throws IOException {
+        while (windowStart + position < fileSize) {
+            if (scanRecord()) {
+                return true;
+            }
+            if (position == 0) {
+                throw new IOException("CSV record is larger than " + MAX_WINDOW + " bytes");
+            }
+            // The record runs past the mapped window, map again starting at the record
+            map(windowStart + position);
+        }
+        fieldCount = 0;
+        return false;
+    }
+
+    /**
+     * @return the number of fields in the current record
+     */
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Decode a field of the current record
+     * 
+     * @param index
+     * @return the field value
+     */
+    public String field(int index) {
+        checkIndex(index);
+        String value = decode(fieldStart[index], fieldEnd[index]);
+        return (fieldFlags[index] & FLAG_ESCAPED) != 0 ? value.replace("\"\"", "\"") : value;
+    }
+
+    /**
+     * Decode a field of the current record, returning the same String instance every time the
+     * same bytes are seen. Used for the low cardinality columns, so millions of rows share a few Strings
+     * 
+     * @param index
+     * @return the field value
+     */
+    public String internedField(int index) {
+        checkIndex(index);
+        if ((fieldFlags[index] & FLAG_ESCAPED) != 0) {
+            return strings.intern(field(index));
+        }
+        return strings.intern(buffer, fieldStart[index], fieldEnd[index]);
+    }
+
+    /**
+     * Read a record that was written as one quoted field ("Toyota,01/15/2023", like some spreadsheet
+     * exports do) as the comma separated fields inside it. Quotes inside that field are not interpreted
+     */
+    public void unwrapRecord() {
+        if (fieldCount != 1 || (fieldFlags[0] & FLAG_QUOTED) == 0) {
+            return;
+        }
+        int start = fieldStart[0];
+        int end = fieldEnd[0];
+        fieldCount = 0;
+        for (int p = start; p < end; p++) {
+            if (buffer.get(p) == ',') {
+                addField(start, p, 0);
+                start = p + 1;
+            }
+        }
+        addField(start, end, 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer = null;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void map(long start) throws IOException {
+        long size = Math.min(MAX_WINDOW, fileSize - start);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        windowStart = start;
+        position = 0;
+    }
+
+    /**
+     * Tokenize the record at the current position
+     * 
+     * @return false when the window ends before the record does
+     */
+    private boolean scanRecord() {
+        int limit = buffer.limit();
+        boolean lastWindow = windowStart + limit >= fileSize;
+        int p = position;
+        fieldCount = 0;
+
+        while (true) {
+            if (p < limit && buffer.get(p) == '"') {
+                int start = p + 1;
+                int flags = FLAG_QUOTED;
+                p = start;
+                while (true) {
+                    if (p >= limit) {
+                        if (!lastWindow) return false;
+                        // Unterminated quote, take the rest of the file as the field
+                        addField(start, p, flags);
+                        break;
+                    }
+                    if (buffer.get(p) == '"') {
+                        if (p + 1 >= limit && !lastWindow) return false;
+                        if (p + 1 < limit && buffer.get(p + 1) == '"') {
+                            flags |= FLAG_ESCAPED;
+                            p += 2;
+                            continue;
+                        }
+                        addField(start, p, flags);
+                        p++;
+                        break;
+                    }
+                    p++;
+                }
+                // Anything between the closing quote and the delimiter is dropped
+                while (p < limit && !isDelimiter(buffer.get(p))) p++;
+            } else {
+                int start = p;
+                while (p < limit && !isDelimiter(buffer.get(p))) p++;
+                addField(start, p, 0);
+            }
+
+            if (p >= limit) {
+                if (!lastWindow) return false;
+                position = p;
+                return true;
+            }
+
+            byte b = buffer.get(p);
+            if (b == ',') {
+                p++;
+                continue;
+            }
+            if (b == '\r') {
+                if (p + 1 >= limit && !lastWindow) return false;
+                if (p + 1 < limit && buffer.get(p + 1) == '\n') p++;
+            }
+            position = p + 1;
+            return true;
+        }
+    }
+
+    private static boolean isDelimiter(byte b) {
+        return b == ',' || b == '\n' || b == '\r';
+    }
+
+    private void addField(int start, int end, int flags) {
+        if (fieldCount == fieldStart.length) {
+            fieldStart = Arrays.copyOf(fieldStart, fieldCount * 2);
+            fieldEnd = Arrays.copyOf(fieldEnd, fieldCount * 2);
+            fieldFlags = Arrays.copyOf(fieldFlags, fieldCount * 2);
+        }
+        fieldStart[fieldCount] = start;
+        fieldEnd[fieldCount] = end;
+        fieldFlags[fieldCount] = flags;
+        fieldCount++;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= fieldCount) {
+            throw new IndexOutOfBoundsException("Field " + index + " of " + fieldCount);
+        }
+    }
+
+    private String decode(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Open addressing table from the UTF-8 bytes of a value to its String,
+     * looked up without copying the bytes out of the mapped buffer
+     */
+    private static class StringTable {
+        private byte[][] keys = new byte[64][];
+        private String[] values = new String[64];
+        private int size;
+
+        String intern(ByteBuffer buffer, int start, int end) {
+            int hash = hash(buffer, start, end);
+            int mask = keys.length - 1;
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                byte[] key = keys[slot];
+                if (key == null) {
+                    byte[] bytes = new byte[end - start];
+                    buffer.get(start, bytes);
+                    return put(slot, bytes, new String(bytes, StandardCharsets.UTF_8));
+                }
+                if (equals(key, buffer, start, end)) {
+                    return values[slot];
+                }
+            }
+        }
+
+        String intern(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            int hash = hash(bytes);
+            int mask = keys.length - 1;
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                if (keys[slot] == null) {
+                    return put(slot, bytes, value);
+                }
+                if (Arrays.equals(keys[slot], bytes)) {
+                    return values[slot];
+                }
+            }
+        }
+
+        private String put(int slot, byte[] key, String value) {
+            keys[slot] = key;
+            values[slot] = value;
+            if (++size * 2 > keys.length) {
+                resize();
+            }
+            return value;
+        }
+
+        private void resize() {
+            byte[][] oldKeys = keys;
+            String[] oldValues = values;
+            keys = new byte[oldKeys.length * 2][];
+            values = new String[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == null) continue;
+                int slot = hash(oldKeys[i]) & mask;
+                while (keys[slot] != null) slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+
+        private static boolean equals(byte[] key, ByteBuffer buffer, int start, int end) {
+            if (key.length != end - start) return false;
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != buffer.get(start + i)) return false;
+            }
+            return true;
+        }
+
+        private static int hash(ByteBuffer buffer, int start, int end) {
+            int h = 1;
+            for (int i = start; i < end; i++) h = 31 * h + buffer.get(i);
+            return mix(h);
+        }
+
+        private static int hash(byte[] bytes) {
+            int h = 1;
+            for (byte b : bytes) h = 31 * h + b;
+            return mix(h);
+        }
+
+        private static int mix(int h) {
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package app.service;
+
+import app.model.Car;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * This class used for deriving the prices a car does not have from the prices it has. The rates
+ * come from a CSV file with a "Date,Currency,Rate" header line, the rate being the units of the
+ * currency one USD buys on that date (yyyy-MM-dd). They are kept in one double array with a row
+ * per date and a column per currency; a currency without a rate on some date keeps its rate of
+ * the date before.
+ * <p>
+ * A car is converted with the rates of the last date on or before its release date, or the
+ * latest rates when it has no release date. Only the currencies that are asked for are derived,
+ * from the USD price when the car has one, the car's own prices are never changed. A loaded file
+ * is cached until it changes on disk.
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+public class CurrencyConverter {
+
+    public static final String BASE_CURRENCY = "USD";
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final Map<Path, CurrencyConverter> CACHE = new ConcurrentHashMap<>();
+
+    private final String version;
+    private final int[] days;
+    private final Map<String, Integer> currencyIndex = new HashMap<>();
+    private final String[] currencies;
+    private final double[] rates;
+
+    private CurrencyConverter(String version, int[] days, String[] currencies, double[] rates) {
+        this.version = version;
+        this.days = days;
+        this.currencies = currencies;
+        this.rates = rates;
+        for (int column = 0; column < currencies.length; column++) {
+            currencyIndex.put(currencies[column], column);
+        }
+    }
+
+    /**
+     * Load the rates of a CSV file, a file that did not change since it was last loaded is not read again
+     * 
+     * @param filePath
+     * @return CurrencyConverter
+     * @throws IOException
+     * @throws IllegalArgumentException when a line is not valid
+     */
+    public static CurrencyConverter load(String filePath) throws IOException {
+        Path path = Paths.get(filePath).toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        String version = attributes.size() + ":" + attributes.lastModifiedTime().toMillis();
+        CurrencyConverter cached = CACHE.get(path);
+        if (cached != null && cached.version.equals(version)) {
+            return cached;
+        }
+        CurrencyConverter converter = read(path, version);
+        CACHE.put(path, converter);
+        return converter;
+    }
+
+    private static CurrencyConverter read(Path path, String version) throws IOException {
+        TreeMap<Integer, Map<String, Double>> ratesByDay = new TreeMap<>();
+        Set<String> currencies = new TreeSet<>();
+        try (CsvReader reader = new CsvReader(path.toString())) {
+            boolean header = true;
+            int line = 0;
+            while (reader.next()) {
+                line++;
+                if (header) {
+                    header = false;
+                    continue;
+                }
+                reader.unwrapRecord();
+                if (reader.fieldCount() == 1 && reader.field(0).isEmpty()) {
+                    continue;
+                }
+                if (reader.fieldCount() != 3) {
+                    throw new IllegalArgumentException("Invalid rates file " + path + ", line " + line + " is not Date,Currency,Rate");
+                }
+                int day;
+                double rate;
+                try {
+                    day = (int) LocalDate.parse(reader.field(0).trim(), DATE_FORMAT).toEpochDay();
+                    rate = Double.parseDouble(reader.field(2).trim());
+                } catch (DateTimeParseException | NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid rates file " + path + ", line " + line + ": " + e.getMessage());
+                }
+                if (!(rate > 0) || Double.isInfinite(rate)) {
+                    throw new IllegalArgumentException("Invalid rates file " + path + ", line " + line + ": the rate must be positive");
+                }
+                String currency = reader.field(1).trim().toUpperCase();
+                currencies.add(currency);
+                ratesByDay.computeIfAbsent(day, d -> new HashMap<>()).put(currency, rate);
+            }
+        }
+        currencies.add(BASE_CURRENCY);
+
+        String[] columns = currencies.toArray(new String[0]);
+        int[] days = new int[Math.max(1, ratesByDay.size())];
+        double[] rates = new double[days.length * columns.length];
+        Arrays.fill(rates, Double.NaN);
+        int row = 0;
+        for (Map.Entry<Integer, Map<String, Double>> dayRates : ratesByDay.entrySet()) {
+            days[row] = dayRates.getKey();
+            for (int column = 0; column < columns.length; column++) {
+                Double rate = dayRates.getValue().get(columns[column]);
+                if (rate != null) {
+                    rates[row * columns.length + column] = rate;
+                } else if (row > 0) {
+                    rates[row * columns.length + column] = rates[(row - 1) * columns.length + column];
+                }
+            }
+            row++;
+        }
+
+        // Rows before the first rate of a currency take that first rate, USD is always 1
+        for (int column = 0; column < columns.length; column++) {
+            if (columns[column].equals(BASE_CURRENCY)) {
+                for (row = 0; row < days.length; row++) rates[row * columns.length + column] = 1;
+                continue;
+            }
+            int first = 0;
+            while (Double.isNaN(rates[first * columns.length + column])) first++;
+            for (row = 0; row < first; row++) {
+                rates[row * columns.length + column] = rates[first * columns.length + column];
+            }
+        }
+        return new CurrencyConverter(version, days, columns, rates);
+    }
+
+    /**
+     * Add the missing prices in the given currencies to every car, while the cars are streamed
+     * 
+     * @param cars
+     * @param currencies the currencies that are needed, the others are left missing
+     * @return Stream over Car
+     */
+    public Stream<Car> fillMissing(Stream<Car> cars, Collection<String> currencies) {
+        if (currencies.isEmpty()) {
+            return cars;
+        }
+        return cars.map(filling(currencies));
+    }
+
+    /**
+     * @param neededCurrencies
+     * @return a function adding the missing prices in the given currencies to a car, and returning it
+     */
+    public UnaryOperator<Car> filling(Collection<String> neededCurrencies) {
+        Set<Integer> wanted = new LinkedHashSet<>();
+        for (String currency : neededCurrencies) {
+            Integer column = currencyIndex.get(currency.toUpperCase());
+            if (column != null) wanted.add(column);
+        }
+        int[] targets = wanted.stream().mapToInt(Integer::intValue).toArray();
+        int base = currencyIndex.get(BASE_CURRENCY);
+
+        return car -> {
+            Map<String, Double> prices = car.getPrices();
+            int row = -1;
+            for (int target : targets) {
+                if (prices.containsKey(currencies[target])) {
+                    continue;
+                }
+                int source = sourceColumn(prices, base);
+                if (source < 0) {
+                    return car;
+                }
+                if (row < 0) row = rowOf(car.getReleaseDate());
+                double converted = convert(prices.get(currencies[source]), source, target, row);
+                prices.put(currencies[target], Math.round(converted * 100) / 100.0);
+            }
+            return car;
+        };
+    }
+
+    /**
+     * The currency a missing price is derived from: USD when the car has it, otherwise the first
+     * currency by name that the car has and that has a rate, -1 when there is none
+     */
+    private int sourceColumn(Map<String, Double> prices, int base) {
+        if (prices.get(BASE_CURRENCY) != null) {
+            return base;
+        }
+        for (int column = 0; column < currencies.length; column++) {
+            if (prices.get(currencies[column]) != null) return column;
+        }
+        return -1;
+    }
+
+    private double convert(double amount, int from, int to, int row) {
+        return amount / rates[row * currencies.length + from] * rates[row * currencies.length + to];
+    }
+
+    /**
+     * @return the row of the last date on or before the given date, the first row when all dates are later
+     */
+    private int rowOf(LocalDate date) {
+        if (date == null) {
+            return days.length - 1;
+        }
+        int index = Arrays.binarySearch(days, (int) date.toEpochDay());
+        if (index >= 0) {
+            return index;
+        }
+        return Math.max(0, -index - 2);
+    }
+}
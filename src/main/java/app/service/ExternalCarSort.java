@@ -0,0 +1,354 @@
+package app.service;
+
+import app.model.Car;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * This class used for sorting more cars than fit in memory. Cars are collected until the memory
+ * budget is used up, that run is sorted and written to a temporary file, and at the end all runs
+ * are merged while the output is read. Within a run file every String is written once, as its
+ * UTF-8 length and bytes, and then referred to by number, dates are epoch days and prices raw doubles.
+ * <p>
+ * At most {@link #MAX_FAN_IN} run files are open at the same time. With more runs, neighbouring
+ * runs are first merged into longer runs, pass after pass, until the rest can be merged at once.
+ * <p>
+ * The merge takes equal cars from the earlier run first, so the order is the same as a stable
+ * in-memory sort. The temporary files are deleted when the stream is closed or fully read.
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+class ExternalCarSort {
+
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final int NULL_STRING = 0;
+    private static final int NEW_STRING = 1;
+    private static final int FIRST_STRING_CODE = 2;
+    private static final int MAX_READ_BUFFER = 64 * 1024;
+    private static final int MIN_READ_BUFFER = 4 * 1024;
+    private static final int MAX_FAN_IN = 64;
+
+    private ExternalCarSort() {
+    }
+
+    /**
+     * Sort the cars within the memory budget
+     * 
+     * @param cars
+     * @param comparator
+     * @param memoryBudget bytes of cars kept in memory before a run is spilled
+     * @return the sorted cars
+     */
+    static Stream<Car> sort(Stream<Car> cars, Comparator<Car> comparator, long memoryBudget) {
+        List<Path> runs = new ArrayList<>();
+        List<Merge> merges = new ArrayList<>(1);
+        return StreamSupport.stream(() -> {
+            try {
+                List<Car> buffer = new ArrayList<>();
+                long bufferSize = 0;
+                for (Iterator<Car> it = cars.iterator(); it.hasNext(); ) {
+                    Car car = it.next();
+                    buffer.add(car);
+                    bufferSize += estimateSize(car);
+                    if (bufferSize >= memoryBudget) {
+                        runs.add(spill(buffer, comparator));
+                        buffer.clear();
+                        bufferSize = 0;
+                    }
+                }
+
+                Collections.sort(buffer, comparator);
+                if (runs.isEmpty()) {
+                    return buffer.spliterator();
+                }
+                if (!buffer.isEmpty()) {
+                    runs.add(spill(buffer, comparator));
+                    buffer.clear();
+                }
+                int readBuffer = (int) Math.max(MIN_READ_BUFFER, Math.min(MAX_READ_BUFFER, memoryBudget / Math.min(runs.size(), MAX_FAN_IN)));
+                reduce(runs, comparator, readBuffer);
+                Merge merge = new Merge(runs, comparator, readBuffer);
+                merges.add(merge);
+                return Spliterators.spliteratorUnknownSize(merge, Spliterator.ORDERED | Spliterator.NONNULL);
+            } catch (IOException e) {
+                deleteAll(runs);
+                throw new UncheckedIOException("Failed to spill sorted cars to disk", e);
+            } catch (RuntimeException | Error e) {
+                deleteAll(runs);
+                throw e;
+            }
+        }, Spliterator.ORDERED | Spliterator.NONNULL, false).onClose(() -> {
+            merges.forEach(Merge::close);
+            deleteAll(runs);
+        }).onClose(cars::close);
+    }
+
+    /**
+     * Rough heap size of a parsed car: the object, its Strings, and the price map with its entries
+     */
+    static long estimateSize(Car car) {
+        long size = 40 + 48 + 80;
+        size += stringSize(car.getType()) + stringSize(car.getModel());
+        size += car.getPrices().size() * (32 + 16 + 48L);
+        return size;
+    }
+
+    private static long stringSize(String value) {
+        return value == null ? 0 : 40 + value.length();
+    }
+
+    private static Path spill(List<Car> buffer, Comparator<Car> comparator) throws IOException {
+        Collections.sort(buffer, comparator);
+        return writeRun(buffer.iterator());
+    }
+
+    /**
+     * Merge groups of neighbouring runs into one run each until at most {@link #MAX_FAN_IN} are left.
+     * Merging neighbours keeps equal cars in the order of their runs
+     * 
+     * @param runs the run files in order, replaced by the merged ones
+     */
+    private static void reduce(List<Path> runs, Comparator<Car> comparator, int bufferSize) throws IOException {
+        while (runs.size() > MAX_FAN_IN) {
+            List<Path> merged = new ArrayList<>();
+            try {
+                for (int start = 0; start < runs.size(); start += MAX_FAN_IN) {
+                    List<Path> group = new ArrayList<>(runs.subList(start, Math.min(start + MAX_FAN_IN, runs.size())));
+                    if (group.size() == 1) {
+                        merged.add(group.get(0));
+                        continue;
+                    }
+                    Merge merge = new Merge(group, comparator, bufferSize);
+                    try {
+                        merged.add(writeRun(merge));
+                    } finally {
+                        merge.close();
+                    }
+                    deleteAll(group);
+                }
+            } catch (IOException | RuntimeException e) {
+                // The runs not merged yet are still in the list and deleted by the caller
+                deleteAll(merged);
+                throw e;
+            }
+            runs.clear();
+            runs.addAll(merged);
+        }
+    }
+
+    private static Path writeRun(Iterator<Car> cars) throws IOException {
+        Path run = Files.createTempFile("car-sort-", ".run");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), MAX_READ_BUFFER))) {
+            Map<String, Integer> strings = new HashMap<>();
+            while (cars.hasNext()) {
+                Car car = cars.next();
+                writeString(out, strings, car.getBrand());
+                writeString(out, strings, car.getType());
+                writeString(out, strings, car.getModel());
+                out.writeInt(car.getReleaseDate() != null ? (int) car.getReleaseDate().toEpochDay() : NO_DATE);
+                writeVarInt(out, car.getPrices().size());
+                for (Map.Entry<String, Double> price : car.getPrices().entrySet()) {
+                    writeString(out, strings, price.getKey());
+                    out.writeDouble(price.getValue());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(run);
+            throw e;
+        }
+        return run;
+    }
+
+    private static void writeString(DataOutputStream out, Map<String, Integer> strings, String value) throws IOException {
+        if (value == null) {
+            writeVarInt(out, NULL_STRING);
+            return;
+        }
+        Integer code = strings.get(value);
+        if (code != null) {
+            writeVarInt(out, code);
+            return;
+        }
+        strings.put(value, FIRST_STRING_CODE + strings.size());
+        writeVarInt(out, NEW_STRING);
+        // Not writeUTF, which is limited to 65535 bytes
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+    }
+
+    private static void deleteAll(List<Path> runs) {
+        for (Path run : runs) {
+            try {
+                Files.deleteIfExists(run);
+            } catch (IOException ignored) {
+                // a leftover temporary file must not hide the original failure
+            }
+        }
+    }
+
+    /**
+     * Reading back the cars of one run file in order
+     */
+    private static class RunReader {
+        final int index;
+        private final DataInputStream in;
+        private final List<String> strings = new ArrayList<>();
+        private final Map<Integer, LocalDate> dates = new HashMap<>();
+        Car current;
+
+        RunReader(Path run, int index, int bufferSize) throws IOException {
+            this.index = index;
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), bufferSize));
+        }
+
+        boolean advance() throws IOException {
+            int brand;
+            try {
+                brand = readVarInt(in);
+            } catch (EOFException e) {
+                current = null;
+                return false;
+            }
+            Car car = new Car();
+            car.setBrand(readString(brand));
+            car.setType(readString(readVarInt(in)));
+            car.setModel(readString(readVarInt(in)));
+            int day = in.readInt();
+            if (day != NO_DATE) {
+                car.setReleaseDate(dates.computeIfAbsent(day, LocalDate::ofEpochDay));
+            }
+            int prices = readVarInt(in);
+            for (int i = 0; i < prices; i++) {
+                String currency = readString(readVarInt(in));
+                car.getPrices().put(currency, in.readDouble());
+            }
+            current = car;
+            return true;
+        }
+
+        private String readString(int code) throws IOException {
+            if (code == NULL_STRING) return null;
+            if (code == NEW_STRING) {
+                byte[] bytes = new byte[readVarInt(in)];
+                in.readFully(bytes);
+                String value = new String(bytes, StandardCharsets.UTF_8);
+                strings.add(value);
+                return value;
+            }
+            return strings.get(code - FIRST_STRING_CODE);
+        }
+
+        void close() {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // the run file is deleted right after
+            }
+        }
+    }
+
+    /**
+     * K-way merge of the run files
+     */
+    private static class Merge implements Iterator<Car> {
+        private final List<Path> runs;
+        private final PriorityQueue<RunReader> heads;
+        private final List<RunReader> readers = new ArrayList<>();
+
+        Merge(List<Path> runs, Comparator<Car> comparator, int bufferSize) throws IOException {
+            this.runs = runs;
+            Comparator<RunReader> order = Comparator.<RunReader, Car>comparing(r -> r.current, comparator)
+                    .thenComparingInt(r -> r.index);
+            this.heads = new PriorityQueue<>(runs.size(), order);
+            try {
+                for (int i = 0; i < runs.size(); i++) {
+                    RunReader reader = new RunReader(runs.get(i), i, bufferSize);
+                    readers.add(reader);
+                    if (reader.advance()) {
+                        heads.add(reader);
+                    } else {
+                        reader.close();
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                close();
+                throw e;
+            }
+            if (heads.isEmpty()) {
+                deleteAll(runs);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Car next() {
+            RunReader reader = heads.poll();
+            if (reader == null) {
+                throw new NoSuchElementException();
+            }
+            Car car = reader.current;
+            try {
+                if (reader.advance()) {
+                    heads.add(reader);
+                } else {
+                    reader.close();
+                    if (heads.isEmpty()) {
+                        deleteAll(runs);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read sorted cars back from disk", e);
+            }
+            return car;
+        }
+
+        void close() {
+            readers.forEach(RunReader::close);
+        }
+    }
+}
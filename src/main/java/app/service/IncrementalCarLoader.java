@@ -0,0 +1,198 @@
+package app.service;
+
+import app.model.Car;
+import app.model.CarTable;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32C;
+
+/**
+ * This class used for keeping a {@link CarTable} up to date with its xml and csv file without
+ * parsing everything again after every change. It remembers where the last &lt;car&gt; element of the
+ * xml file ended and a CRC32C of the file up to there: when the file still starts with the same
+ * bytes, only the &lt;car&gt; elements written after that point are parsed. The csv file is small, it
+ * is read again and only the rows of brands whose release date changed are updated.
+ * <p>
+ * Every refresh works on a copy, a table returned before is never changed afterwards, so it can
+ * still be read while the next version is being built. Anything else than appended cars, like an
+ * edited or removed car, makes the refresh parse both files again, as does a file that
+ * {@link ParallelCarParser} cannot cut, e.g. one in another encoding than UTF-8.
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+public class IncrementalCarLoader {
+
+    private static final long MAX_WINDOW = 1L << 30;
+
+    private final String xmlFilePath;
+    private final String csvFilePath;
+    private final int threads;
+    private final ModelBrandTable models;
+
+    private CarTable table;
+    private Map<String, String> brandDates;
+    private long lastCarEnd;
+    private int prefixCrc;
+
+    /**
+     * Start tracking the files
+     * 
+     * @param xmlFilePath
+     * @param csvFilePath
+     * @param threads used when both files have to be parsed again
+     * @param models the models the brands of the table were found in
+     * @param table the cars of the files as they are now, e.g. from {@link CarParser#parseTable}
+     * @throws IOException
+     */
+    public IncrementalCarLoader(String xmlFilePath, String csvFilePath, int threads, ModelBrandTable models, CarTable table) throws IOException {
+        this.xmlFilePath = xmlFilePath;
+        this.csvFilePath = csvFilePath;
+        this.threads = threads;
+        this.models = models;
+        this.table = table;
+        this.brandDates = CarParser.parseCsv(csvFilePath);
+        try (FileChannel channel = FileChannel.open(Paths.get(xmlFilePath), StandardOpenOption.READ)) {
+            this.lastCarEnd = ParallelCarParser.findLastCarEnd(channel);
+            this.prefixCrc = crc(channel, lastCarEnd);
+        }
+    }
+
+    public synchronized CarTable getTable() {
+        return table;
+    }
+
+    /**
+     * Bring the table up to date with the files
+     * 
+     * @return the change, or null when the cars did not change
+     * @throws Exception
+     */
+    public synchronized Change refresh() throws Exception {
+        Map<String, String> newBrandDates = CarParser.parseCsv(csvFilePath);
+
+        try (FileChannel channel = FileChannel.open(Paths.get(xmlFilePath), StandardOpenOption.READ)) {
+            long newLastCarEnd = ParallelCarParser.findLastCarEnd(channel);
+            // The appended cars are parsed without the prolog, which a file that cannot be cut needs
+            boolean appendedOnly = lastCarEnd > 0 && newLastCarEnd >= lastCarEnd && crc(channel, lastCarEnd) == prefixCrc
+                    && ParallelCarParser.canCut(channel);
+            if (!appendedOnly) {
+                return reloadAll(channel, newLastCarEnd, newBrandDates);
+            }
+
+            int[] changedRows = updatedReleaseRows(newBrandDates);
+            if (newLastCarEnd == lastCarEnd && changedRows == null) {
+                return null;
+            }
+
+            int firstNewRow = table.size();
+            CarTable updated = table.copy();
+            if (changedRows != null) {
+                for (int row : changedRows) {
+                    String releaseDate = newBrandDates.get(updated.getBrand(row));
+                    updated.setReleaseDay(row, releaseDate != null
+                            ? (int) CarParser.parseReleaseDate(releaseDate).toEpochDay() : CarTable.NO_DATE);
+                }
+            }
+            if (newLastCarEnd > lastCarEnd) {
+                for (Car car : ParallelCarParser.parseChunk(
+                        channel.map(FileChannel.MapMode.READ_ONLY, lastCarEnd, newLastCarEnd - lastCarEnd), newBrandDates, models)) {
+                    updated.add(car);
+                }
+                prefixCrc = crc(channel, newLastCarEnd);
+                lastCarEnd = newLastCarEnd;
+            }
+
+            table = updated;
+            brandDates = newBrandDates;
+            return new Change(updated, firstNewRow, changedRows != null ? changedRows : new int[0], false);
+        }
+    }
+
+    private Change reloadAll(FileChannel channel, long newLastCarEnd, Map<String, String> newBrandDates) throws Exception {
+        CarTable reloaded = CarParser.parseTable(xmlFilePath, csvFilePath, threads, models);
+        table = reloaded;
+        brandDates = newBrandDates;
+        lastCarEnd = newLastCarEnd;
+        prefixCrc = crc(channel, newLastCarEnd);
+        return new Change(reloaded, 0, new int[0], true);
+    }
+
+    /**
+     * @return the rows of the brands whose release date is different in the new csv file, or null when none is
+     */
+    private int[] updatedReleaseRows(Map<String, String> newBrandDates) {
+        Set<String> brands = new HashSet<>(brandDates.keySet());
+        brands.addAll(newBrandDates.keySet());
+        brands.removeIf(brand -> Objects.equals(brandDates.get(brand), newBrandDates.get(brand)));
+        if (brands.isEmpty()) {
+            return null;
+        }
+
+        boolean[] changedCodes = new boolean[table.getBrands().size()];
+        for (String brand : brands) {
+            int code = table.getBrands().codeOf(brand);
+            if (code >= 0) changedCodes[code] = true;
+        }
+        return IntStream.range(0, table.size())
+                .filter(row -> table.getBrandCode(row) >= 0 && changedCodes[table.getBrandCode(row)])
+                .toArray();
+    }
+
+    private static int crc(FileChannel channel, long length) throws IOException {
+        CRC32C crc = new CRC32C();
+        for (long position = 0; position < length; position += MAX_WINDOW) {
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAX_WINDOW, length - position)));
+        }
+        return (int) crc.getValue();
+    }
+
+    /**
+     * A new version of the table and how it differs from the one before
+     */
+    public static class Change {
+        private final CarTable table;
+        private final int firstNewRow;
+        private final int[] changedRows;
+        private final boolean reloaded;
+
+        Change(CarTable table, int firstNewRow, int[] changedRows, boolean reloaded) {
+            this.table = table;
+            this.firstNewRow = firstNewRow;
+            this.changedRows = changedRows;
+            this.reloaded = reloaded;
+        }
+
+        public CarTable getTable() {
+            return table;
+        }
+
+        /**
+         * @return the first appended row, the rows before it are the rows of the previous version
+         */
+        public int getFirstNewRow() {
+            return firstNewRow;
+        }
+
+        /**
+         * @return old rows whose release date changed
+         */
+        public int[] getChangedRows() {
+            return changedRows;
+        }
+
+        /**
+         * @return true when both files were parsed again and the table has nothing in common with the previous one
+         */
+        public boolean isReloaded() {
+            return reloaded;
+        }
+    }
+}
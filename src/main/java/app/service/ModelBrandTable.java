@@ -0,0 +1,220 @@
+package app.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * This class used for finding the brand of a car model. The models are kept case folded back to
+ * back in one char array with an open addressing hash table over them, so a lookup compares the
+ * chars of the asked model in place and does not create any object, whatever the size of the
+ * catalog.
+ * <p>
+ * A model that is not in the table, like "RAV4 Hybrid", gets the brand of the longest listed model
+ * it starts with, where the listed model has to end at a word boundary (a char that is not a letter
+ * or digit). Models without any match get {@link #UNKNOWN_BRAND}.
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+public class ModelBrandTable {
+
+    public static final String UNKNOWN_BRAND = "Unknown";
+
+    private static final ModelBrandTable DEFAULTS = of(defaultModels(), true);
+
+    private final char[] keys;
+    private final int[] keyStart;
+    private final String[] brands;
+    private final int[] slots;
+    private final int mask;
+    private final boolean prefixMatching;
+    private final int checksum;
+
+    private ModelBrandTable(Map<String, String> modelToBrand, boolean prefixMatching) {
+        Map<String, String> byFoldedModel = new LinkedHashMap<>();
+        Map<String, String> brandInstances = new HashMap<>();
+        modelToBrand.forEach((model, brand) ->
+                byFoldedModel.put(fold(model), brandInstances.computeIfAbsent(brand, b -> b)));
+
+        int entries = byFoldedModel.size();
+        this.keyStart = new int[entries + 1];
+        this.brands = new String[entries];
+        StringBuilder allKeys = new StringBuilder();
+        int entry = 0;
+        for (Map.Entry<String, String> model : byFoldedModel.entrySet()) {
+            keyStart[entry] = allKeys.length();
+            allKeys.append(model.getKey());
+            brands[entry++] = model.getValue();
+        }
+        keyStart[entries] = allKeys.length();
+        this.keys = allKeys.toString().toCharArray();
+
+        // At most half full, so a probe sequence ends at an empty slot quickly
+        int capacity = Integer.highestOneBit(Math.max(4, entries * 2 - 1)) << 1;
+        this.slots = new int[capacity];
+        this.mask = capacity - 1;
+        for (entry = 0; entry < entries; entry++) {
+            int slot = spread(hash(keys, keyStart[entry], keyStart[entry + 1])) & mask;
+            while (slots[slot] != 0) slot = (slot + 1) & mask;
+            slots[slot] = entry + 1;
+        }
+        this.prefixMatching = prefixMatching;
+
+        CRC32C crc = new CRC32C();
+        for (entry = 0; entry < entries; entry++) {
+            crc.update(new String(keys, keyStart[entry], keyStart[entry + 1] - keyStart[entry]).getBytes(StandardCharsets.UTF_8));
+            crc.update(0);
+            crc.update(brands[entry].getBytes(StandardCharsets.UTF_8));
+            crc.update(0);
+        }
+        crc.update(prefixMatching ? 1 : 0);
+        this.checksum = (int) crc.getValue();
+    }
+
+    /**
+     * @return the ten models of the sample data
+     */
+    public static ModelBrandTable defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Build the table from a model to brand map, a model listed twice ignoring case keeps the last brand
+     * 
+     * @param modelToBrand
+     * @param prefixMatching whether an unlisted model gets the brand of a listed model it starts with
+     * @return ModelBrandTable
+     */
+    public static ModelBrandTable of(Map<String, String> modelToBrand, boolean prefixMatching) {
+        return new ModelBrandTable(modelToBrand, prefixMatching);
+    }
+
+    /**
+     * Load the table from a CSV file with a "Model,Brand" header line and one model per line
+     * 
+     * @param filePath
+     * @return ModelBrandTable, with prefix matching
+     * @throws IOException
+     */
+    public static ModelBrandTable load(String filePath) throws IOException {
+        Map<String, String> modelToBrand = new LinkedHashMap<>();
+        try (CsvReader reader = new CsvReader(filePath)) {
+            boolean header = true;
+            while (reader.next()) {
+                if (header) {
+                    header = false;
+                    continue;
+                }
+                reader.unwrapRecord();
+                if (reader.fieldCount() == 2 && !reader.field(0).isEmpty())
+                    modelToBrand.put(reader.field(0), reader.internedField(1));
+            }
+        }
+        return of(modelToBrand, true);
+    }
+
+    /**
+     * Find the brand of a model, ignoring case
+     * 
+     * @param model
+     * @return the brand, or {@link #UNKNOWN_BRAND}
+     */
+    public String brandOf(String model) {
+        if (model == null) {
+            return UNKNOWN_BRAND;
+        }
+        int entry = find(model, model.length(), hash(model, model.length()));
+        if (entry >= 0) {
+            return brands[entry];
+        }
+        if (!prefixMatching) {
+            return UNKNOWN_BRAND;
+        }
+
+        // Probe every prefix that ends at a word boundary, the longest match wins
+        String brand = UNKNOWN_BRAND;
+        int h = 0;
+        for (int i = 0; i < model.length(); i++) {
+            char c = model.charAt(i);
+            if (i > 0 && !Character.isLetterOrDigit(c)) {
+                entry = find(model, i, h);
+                if (entry >= 0) brand = brands[entry];
+            }
+            h = 31 * h + fold(c);
+        }
+        return brand;
+    }
+
+    public int size() {
+        return brands.length;
+    }
+
+    /**
+     * @return a checksum of the models, brands and matching mode, equal tables have equal checksums
+     */
+    public int checksum() {
+        return checksum;
+    }
+
+    private int find(String model, int length, int hash) {
+        for (int slot = spread(hash) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int entry = slots[slot] - 1;
+            if (keyStart[entry + 1] - keyStart[entry] == length && matches(model, length, keyStart[entry])) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private boolean matches(String model, int length, int start) {
+        for (int i = 0; i < length; i++) {
+            if (fold(model.charAt(i)) != keys[start + i]) return false;
+        }
+        return true;
+    }
+
+    private static int hash(String value, int length) {
+        int h = 0;
+        for (int i = 0; i < length; i++) h = 31 * h + fold(value.charAt(i));
+        return h;
+    }
+
+    private static int hash(char[] chars, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) h = 31 * h + chars[i];
+        return h;
+    }
+
+    private static int spread(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private static String fold(String value) {
+        char[] chars = value.toCharArray();
+        for (int i = 0; i < chars.length; i++) chars[i] = fold(chars[i]);
+        return new String(chars);
+    }
+
+    private static Map<String, String> defaultModels() {
+        Map<String, String> models = new LinkedHashMap<>();
+        models.put("RAV4", "Toyota");
+        models.put("Civic", "Honda");
+        models.put("F-150", "Ford");
+        models.put("Model X", "Tesla");
+        models.put("330i", "BMW");
+        models.put("Q5", "Audi");
+        models.put("Silverado", "Chevrolet");
+        models.put("C-Class", "Mercedes-Benz");
+        models.put("Rogue", "Nissan");
+        models.put("Elantra", "Hyundai");
+        return models;
+    }
+}
@@ -0,0 +1,114 @@
+package app.service;
+
+import app.model.Car;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * This class used for parsing many xml files at the same time. Every file is parsed whole by one
+ * thread of a pool, a few files per thread ahead of the one being read, so the memory used stays
+ * bounded by the files in flight however many files there are. The cars come out in file order,
+ * all files are joined with the same brand release dates.
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+final class MultiFileCarParser {
+
+    private static final int FILES_PER_THREAD = 2;
+
+    private MultiFileCarParser() {
+    }
+
+    /**
+     * Parse the xml files on the given number of threads, one file after the other with a single thread
+     * 
+     * @param xmlFilePaths
+     * @param brandDates
+     * @param models
+     * @param threads
+     * @return Stream Car Objects in file order
+     */
+    static Stream<Car> stream(List<String> xmlFilePaths, Map<String, String> brandDates, ModelBrandTable models, int threads) {
+        if (threads <= 1) {
+            return xmlFilePaths.stream().flatMap(xmlFilePath -> {
+                try {
+                    return CarParser.streamXml(xmlFilePath, brandDates, 1, models);
+                } catch (Exception e) {
+                    throw new IllegalStateException("Failed to parse " + xmlFilePath + ": " + e.getMessage(), e);
+                }
+            });
+        }
+
+        ExecutorService pool = new ForkJoinPool(threads);
+        Iterator<List<Car>> files = new Iterator<List<Car>>() {
+            private final Deque<Future<List<Car>>> inFlight = new ArrayDeque<>();
+            private int nextFile;
+
+            @Override
+            public boolean hasNext() {
+                submitAhead();
+                return !inFlight.isEmpty();
+            }
+
+            @Override
+            public List<Car> next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                List<Car> cars = join(inFlight.poll());
+                submitAhead();
+                return cars;
+            }
+
+            private void submitAhead() {
+                while (inFlight.size() < threads * FILES_PER_THREAD && nextFile < xmlFilePaths.size()) {
+                    String xmlFilePath = xmlFilePaths.get(nextFile++);
+                    inFlight.add(pool.submit(() -> parseFile(xmlFilePath, brandDates, models)));
+                }
+            }
+        };
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(files, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .flatMap(List::stream)
+                .onClose(pool::shutdownNow);
+    }
+
+    private static List<Car> parseFile(String xmlFilePath, Map<String, String> brandDates, ModelBrandTable models) throws Exception {
+        UnaryOperator<Car> joiner = CarParser.brandJoiner(brandDates, models);
+        List<Car> cars = new ArrayList<>();
+        try (CarXmlReader reader = new CarXmlReader(xmlFilePath)) {
+            while (reader.hasNext()) {
+                cars.add(joiner.apply(reader.next()));
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to parse " + xmlFilePath + ": " + e.getMessage(), e);
+        }
+        return cars;
+    }
+
+    private static List<Car> join(Future<List<Car>> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while parsing the XML files", e);
+        } catch (Exception e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw cause instanceof IllegalStateException
+                    ? (IllegalStateException) cause
+                    : new IllegalStateException("Failed to parse the XML files: " + cause.getMessage(), cause);
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package app.service;
+
+import app.model.Car;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * This class used for parsing one XML file on several threads. The file is cut into chunks
+ * at the start of a <car> element, every chunk is parsed and joined with the brand release dates
+ * on its own, and the chunks are handed out again in file order. Only a few chunks per thread are
+ * parsed ahead of the one being read, so the memory used stays bounded however large the file is.
+ * <p>
+ * The cut points are found by looking for the bytes of the "<car" tag, so the file must not
+ * contain that tag inside comments or CDATA sections. Every chunk is parsed as UTF-8 inside a
+ * plain &lt;cars&gt; element, without the prolog of the file, so a file that declares another
+ * encoding than UTF-8 or ASCII, has a DOCTYPE (its entities would be unknown in a chunk),
+ * declares namespace prefixes, uses a prefixed car element, or has a car element inside another
+ * one, which shows as a cut not right after a &lt;/car&gt;, cannot be cut and is read by a
+ * single thread instead.
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+class ParallelCarParser {
+
+    private static final byte[] CAR_START = "<car".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CAR_END = "</car>".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PREFIXED_CAR = ":car".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PREFIX_DECLARATION = "xmlns:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DOCTYPE = "<!DOCTYPE".getBytes(StandardCharsets.US_ASCII);
+    private static final Pattern ENCODING_DECLARATION = Pattern.compile("^(?:\uFEFF)?<\\?xml[^>]*?\\sencoding\\s*=\\s*[\"']([^\"']*)[\"']");
+    private static final byte[] CHUNK_OPEN = "<cars>".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CHUNK_CLOSE = "</cars>".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int SCAN_WINDOW = 64 * 1024;
+    private static final long MAX_CHUNK_SIZE = 64L * 1024 * 1024;
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int CHUNKS_AHEAD_PER_THREAD = 2;
+
+    private ParallelCarParser() {
+    }
+
+    /**
+     * Parse the xml file on the given number of threads, or on the calling thread when it cannot be cut
+     * 
+     * @param xmlFilePath
+     * @param brandDates
+     * @param models
+     * @param threads
+     * @return Stream Car Objects in file order
+     * @throws Exception
+     */
+    static Stream<Car> stream(String xmlFilePath, Map<String, String> brandDates, ModelBrandTable models, int threads) throws Exception {
+        List<ByteBuffer> chunks = split(xmlFilePath, threads);
+        if (chunks == null) {
+            return CarParser.streamXml(xmlFilePath, brandDates, 1, models);
+        }
+
+        ExecutorService pool = new ForkJoinPool(threads);
+        Iterator<List<Car>> parsed = new Iterator<List<Car>>() {
+            private final Deque<Future<List<Car>>> inFlight = new ArrayDeque<>();
+            private int nextChunk;
+
+            @Override
+            public boolean hasNext() {
+                submitAhead();
+                return !inFlight.isEmpty();
+            }
+
+            @Override
+            public List<Car> next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                List<Car> cars = join(inFlight.poll());
+                submitAhead();
+                return cars;
+            }
+
+            private void submitAhead() {
+                while (inFlight.size() < threads * CHUNKS_AHEAD_PER_THREAD && nextChunk < chunks.size()) {
+                    ByteBuffer chunk = chunks.get(nextChunk);
+                    // Drop the reference, so a parsed chunk can be unmapped
+                    chunks.set(nextChunk++, null);
+                    inFlight.add(pool.submit(() -> parseChunk(chunk, brandDates, models)));
+                }
+            }
+        };
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(parsed, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .flatMap(List::stream)
+                .onClose(pool::shutdownNow);
+    }
+
+    /**
+     * Parse the <car> elements of a chunk that holds whole elements only
+     * 
+     * @param chunk
+     * @param brandDates
+     * @param models
+     * @return the joined cars in chunk order
+     * @throws Exception
+     */
+    static List<Car> parseChunk(ByteBuffer chunk, Map<String, String> brandDates, ModelBrandTable models) throws Exception {
+        UnaryOperator<Car> joiner = CarParser.brandJoiner(brandDates, models);
+        List<Car> cars = new ArrayList<>();
+        InputStream input = new SequenceInputStream(new ByteArrayInputStream(CHUNK_OPEN),
+                new SequenceInputStream(new ByteBufferInputStream(chunk), new ByteArrayInputStream(CHUNK_CLOSE)));
+        try (CarXmlReader reader = new CarXmlReader(input)) {
+            while (reader.hasNext()) {
+                cars.add(joiner.apply(reader.next()));
+            }
+        }
+        return cars;
+    }
+
+    private static List<Car> join(Future<List<Car>> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while parsing the XML file", e);
+        } catch (Exception e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw new IllegalStateException("Failed to parse the XML file: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Cut the file into memory mapped chunks that hold whole <car> elements only,
+     * from the first <car> up to the end of the last </car>
+     * 
+     * @return the chunks, or null when the file cannot be cut, see the class comment
+     */
+    private static List<ByteBuffer> split(String xmlFilePath, int threads) throws IOException {
+        List<ByteBuffer> chunks = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(Paths.get(xmlFilePath), StandardOpenOption.READ)) {
+            long first = findCarStart(channel, 0);
+            long last = findLastCarEnd(channel);
+            if (!canCut(channel, first, last)) {
+                return null;
+            }
+
+            long length = last - first;
+            long count = Math.max((long) threads * CHUNKS_PER_THREAD, (length + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+            long chunkSize = Math.max(SCAN_WINDOW, length / count);
+
+            long start = first;
+            while (start < last) {
+                long end = start + chunkSize >= last ? last : findCarStart(channel, start + chunkSize);
+                if (end < 0 || end > last) {
+                    end = last;
+                } else if (!followsCarEnd(channel, end)) {
+                    // The cut would be inside a car that has a car element in it
+                    return null;
+                }
+                chunks.add(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+                start = end;
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * @param channel
+     * @return true when the &lt;car&gt; elements of the file can be parsed chunk by chunk with
+     *         {@link #parseChunk}, see the class comment
+     * @throws IOException
+     */
+    static boolean canCut(FileChannel channel) throws IOException {
+        return canCut(channel, findCarStart(channel, 0), findLastCarEnd(channel));
+    }
+
+    private static boolean canCut(FileChannel channel, long first, long last) throws IOException {
+        if (first < 0 || last <= first) {
+            // No plain <car> at all, the cars may be prefixed
+            return false;
+        }
+        return isUtf8(channel, first)
+                && !contains(channel, 0, first, DOCTYPE)
+                && !contains(channel, 0, first, PREFIX_DECLARATION)
+                && !contains(channel, 0, first, PREFIXED_CAR)
+                && !contains(channel, last, channel.size(), PREFIXED_CAR);
+    }
+
+    /**
+     * @return true when the XML declaration at the start of the file declares no encoding, UTF-8 or ASCII
+     */
+    private static boolean isUtf8(FileChannel channel, long first) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate((int) Math.min(SCAN_WINDOW, first));
+        int read = Math.max(0, channel.read(window, 0));
+        String prolog = new String(window.array(), 0, read, StandardCharsets.UTF_8);
+        Matcher declaration = ENCODING_DECLARATION.matcher(prolog);
+        if (!declaration.find()) {
+            return true;
+        }
+        String encoding = declaration.group(1).trim().toUpperCase(Locale.ROOT);
+        return encoding.equals("UTF-8") || encoding.equals("UTF8") || encoding.equals("US-ASCII") || encoding.equals("ASCII");
+    }
+
+    private static long findCarStart(FileChannel channel, long from) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(SCAN_WINDOW);
+        long position = from;
+        while (true) {
+            window.clear();
+            int read = channel.read(window, position);
+            if (read <= CAR_START.length) {
+                return -1;
+            }
+            byte[] bytes = window.array();
+            for (int i = 0; i < read - CAR_START.length; i++) {
+                if (matches(bytes, i, CAR_START) && isTagNameEnd(bytes[i + CAR_START.length])) {
+                    return position + i;
+                }
+            }
+            position += read - CAR_START.length;
+        }
+    }
+
+    /**
+     * @param channel
+     * @return the offset right after the last </car> of the file, or -1 when there is none
+     * @throws IOException
+     */
+    static long findLastCarEnd(FileChannel channel) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(SCAN_WINDOW);
+        long end = channel.size();
+        while (end > 0) {
+            long start = Math.max(0, end - SCAN_WINDOW);
+            window.clear();
+            window.limit((int) (end - start));
+            int read = channel.read(window, start);
+            byte[] bytes = window.array();
+            for (int i = read - CAR_END.length; i >= 0; i--) {
+                if (matches(bytes, i, CAR_END)) {
+                    return start + i + CAR_END.length;
+                }
+            }
+            if (start == 0) {
+                break;
+            }
+            end = start + CAR_END.length - 1;
+        }
+        return -1;
+    }
+
+    /**
+     * @return true when the bytes from start to end contain the pattern
+     */
+    private static boolean contains(FileChannel channel, long start, long end, byte[] pattern) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(SCAN_WINDOW);
+        long position = start;
+        while (position < end) {
+            window.clear();
+            window.limit((int) Math.min(SCAN_WINDOW, end - position));
+            int read = channel.read(window, position);
+            if (read < pattern.length) {
+                return false;
+            }
+            byte[] bytes = window.array();
+            for (int i = 0; i <= read - pattern.length; i++) {
+                if (matches(bytes, i, pattern)) return true;
+            }
+            if (position + read >= end) {
+                return false;
+            }
+            position += read - pattern.length + 1;
+        }
+        return false;
+    }
+
+    /**
+     * @return true when only white space is between the &lt;/car&gt; before the offset and the offset
+     */
+    private static boolean followsCarEnd(FileChannel channel, long offset) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(SCAN_WINDOW);
+        long start = Math.max(0, offset - SCAN_WINDOW);
+        window.limit((int) (offset - start));
+        int read = channel.read(window, start);
+        byte[] bytes = window.array();
+        int i = read - 1;
+        while (i >= 0 && (bytes[i] == ' ' || bytes[i] == '\t' || bytes[i] == '\n' || bytes[i] == '\r')) {
+            i--;
+        }
+        return i + 1 >= CAR_END.length && matches(bytes, i + 1 - CAR_END.length, CAR_END);
+    }
+
+    private static boolean matches(byte[] bytes, int offset, byte[] pattern) {
+        for (int j = 0; j < pattern.length; j++) {
+            if (bytes[offset + j] != pattern[j]) return false;
+        }
+        return true;
+    }
+
+    private static boolean isTagNameEnd(byte b) {
+        return b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    /**
+     * Reading a mapped chunk without copying it onto the heap first
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) return -1;
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
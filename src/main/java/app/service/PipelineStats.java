@@ -0,0 +1,405 @@
+package app.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * This class used for measuring the stages of a run: how long each one took, how many cars went
+ * in and out, how many bytes it read or wrote and how many bytes it allocated. The stages are lazy
+ * streams pulling from each other, so every stage measures the time it spends inside its own
+ * stream and subtracts the time spent in the stages it pulls from while it waited for them. The
+ * time a car spends in the stages after it is not counted.
+ * <p>
+ * Allocations are counted for the thread running the stages with {@link ThreadMXBean}; the
+ * worker threads of a parallel parse are not included. When the run ends every stage is also
+ * committed as a {@link StageEvent} for Java Flight Recorder.
+ * <p>
+ * A disabled instance runs the stages without wrapping them, so it costs nothing.
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+public class PipelineStats {
+
+    public static final String FORMAT_TEXT = "text";
+    public static final String FORMAT_JSON = "json";
+
+    private static final long NOT_MEASURED = -1;
+
+    private final boolean enabled;
+    private final com.sun.management.ThreadMXBean threads;
+    private final List<Stage> stages = new ArrayList<>();
+    private final long startNanos = System.nanoTime();
+    private Stage running;
+
+    /**
+     * @param enabled false to run the stages as they are
+     */
+    public PipelineStats(boolean enabled) {
+        this.enabled = enabled;
+        this.threads = enabled ? allocationCounter() : null;
+    }
+
+    /**
+     * @return true when the stages are measured
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return true when a Flight Recorder recording is taking the stage events
+     */
+    public static boolean isRecording() {
+        return EventType.getEventType(StageEvent.class).isEnabled();
+    }
+
+    /**
+     * Measure a stage while its stream is being read
+     * 
+     * @param name
+     * @param stream the stream of the stage, reading from the stream of the stage measured before
+     * @return the measured stream
+     */
+    public <T> Stream<T> measure(String name, Stream<T> stream) {
+        if (!enabled) {
+            return stream;
+        }
+        return measured(addStage(name), stream);
+    }
+
+    /**
+     * Measure the first stage, creating its stream is measured as well
+     * 
+     * @param name
+     * @param bytesRead the size of the files the stage reads
+     * @param source creates the stream
+     * @return the measured stream
+     * @throws Exception when the stream cannot be created
+     */
+    public <T> Stream<T> measureSource(String name, long bytesRead, Callable<Stream<T>> source) throws Exception {
+        if (!enabled) {
+            return source.call();
+        }
+        Stage stage = addStage(name);
+        stage.bytes = bytesRead;
+        Stream<T> stream;
+        Stage caller = running;
+        running = stage;
+        long start = System.nanoTime();
+        long allocated = allocatedBytes();
+        try {
+            stream = source.call();
+        } finally {
+            finish(stage, caller, start, allocated);
+        }
+        return measured(stage, stream);
+    }
+
+    /**
+     * Run the last stage, which writes the cars to out, counting the bytes it writes
+     * 
+     * @param name
+     * @param out
+     * @param stage
+     */
+    public void measureOutput(String name, OutputStream out, Consumer<OutputStream> stage) {
+        if (!enabled) {
+            stage.accept(out);
+            return;
+        }
+        Stage measured = addStage(name);
+        CountingOutputStream counting = new CountingOutputStream(out);
+        Stage caller = running;
+        running = measured;
+        long start = System.nanoTime();
+        long allocated = allocatedBytes();
+        try {
+            stage.accept(counting);
+        } finally {
+            finish(measured, caller, start, allocated);
+            measured.bytes = counting.count;
+        }
+    }
+
+    /**
+     * Commit the stages to Flight Recorder and print them
+     * 
+     * @param format text, json, or null to only commit the events
+     * @param out
+     */
+    public void report(String format, PrintStream out) {
+        if (!enabled) {
+            return;
+        }
+        for (Stage stage : stages) {
+            StageEvent event = new StageEvent();
+            event.stage = stage.name;
+            event.wallTime = stage.ownNanos();
+            event.recordsIn = stage.recordsIn();
+            event.recordsOut = stage.records;
+            event.bytes = stage.bytes;
+            event.allocated = ownAllocated(stage);
+            event.commit();
+        }
+
+        if (FORMAT_JSON.equalsIgnoreCase(format)) {
+            printJson(out);
+        } else if (FORMAT_TEXT.equalsIgnoreCase(format)) {
+            printText(out);
+        }
+    }
+
+    private void printText(PrintStream out) {
+        out.println("=== Stats ===");
+        out.println(String.format("%-14s %12s %12s %12s %14s %16s", "Stage", "Time (ms)", "Cars in", "Cars out", "Bytes", "Allocated"));
+        for (Stage stage : stages) {
+            out.println(String.format("%-14s %12.1f %12s %12s %14s %16s", stage.name,
+                    stage.ownNanos() / 1e6, orDash(stage.recordsIn()), orDash(stage.records),
+                    orDash(stage.bytes), orDash(ownAllocated(stage))));
+        }
+        out.println(String.format("%-14s %12.1f", "total", (System.nanoTime() - startNanos) / 1e6));
+    }
+
+    private void printJson(PrintStream out) {
+        List<Map<String, Object>> stageList = new ArrayList<>();
+        for (Stage stage : stages) {
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put("stage", stage.name);
+            values.put("wallNanos", stage.ownNanos());
+            values.put("recordsIn", orNull(stage.recordsIn()));
+            values.put("recordsOut", orNull(stage.records));
+            values.put("bytes", orNull(stage.bytes));
+            values.put("allocatedBytes", orNull(ownAllocated(stage)));
+            stageList.add(values);
+        }
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("stages", stageList);
+        report.put("totalNanos", System.nanoTime() - startNanos);
+        try {
+            out.println(new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValueAsString(report));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private <T> Stream<T> measured(Stage stage, Stream<T> stream) {
+        return StreamSupport.stream(new MeasuredSpliterator<>(stream.spliterator(), stage), false)
+                .onClose(stream::close);
+    }
+
+    private Stage addStage(String name) {
+        Stage stage = new Stage(name, stages.isEmpty() ? null : stages.get(stages.size() - 1));
+        stages.add(stage);
+        return stage;
+    }
+
+    /**
+     * End a step of the stage and give the caller back the clock, the step does not count for the caller
+     */
+    private void finish(Stage stage, Stage caller, long startNanos, long allocatedBefore) {
+        long elapsed = System.nanoTime() - startNanos;
+        long allocated = allocatedBytes() - allocatedBefore;
+        stage.nanos += elapsed;
+        stage.allocated += allocated;
+        if (caller != null) {
+            caller.innerNanos += elapsed;
+            caller.innerAllocated += allocated;
+        }
+        running = caller;
+    }
+
+    private long ownAllocated(Stage stage) {
+        return threads != null ? stage.ownAllocated() : NOT_MEASURED;
+    }
+
+    private long allocatedBytes() {
+        return threads != null ? threads.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) bean;
+            if (counter.isThreadAllocatedMemorySupported()) {
+                counter.setThreadAllocatedMemoryEnabled(true);
+                return counter;
+            }
+        }
+        return null;
+    }
+
+    private static String orDash(long value) {
+        return value == NOT_MEASURED ? "-" : Long.toString(value);
+    }
+
+    private static Long orNull(long value) {
+        return value == NOT_MEASURED ? null : value;
+    }
+
+    /**
+     * The counters of one stage, the inner ones are the part spent in the stages it pulled from
+     */
+    private static final class Stage {
+        final String name;
+        final Stage previous;
+        long nanos;
+        long allocated;
+        long innerNanos;
+        long innerAllocated;
+        long records = NOT_MEASURED;
+        long bytes = NOT_MEASURED;
+
+        Stage(String name, Stage previous) {
+            this.name = name;
+            this.previous = previous;
+        }
+
+        long recordsIn() {
+            return previous != null ? previous.records : NOT_MEASURED;
+        }
+
+        long ownNanos() {
+            return nanos - innerNanos;
+        }
+
+        long ownAllocated() {
+            return allocated - innerAllocated;
+        }
+    }
+
+    /**
+     * Times every step of the stream it wraps. The car is handed on only after the clock is read,
+     * so the stages after this one are not counted
+     */
+    private final class MeasuredSpliterator<T> implements Spliterator<T>, Consumer<T> {
+        private final Spliterator<T> source;
+        private final Stage stage;
+        private T current;
+
+        MeasuredSpliterator(Spliterator<T> source, Stage stage) {
+            this.source = source;
+            this.stage = stage;
+            stage.records = 0;
+        }
+
+        @Override
+        public void accept(T item) {
+            current = item;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            Stage caller = running;
+            running = stage;
+            long start = System.nanoTime();
+            long allocated = allocatedBytes();
+            boolean advanced;
+            try {
+                advanced = source.tryAdvance(this);
+            } finally {
+                finish(stage, caller, start, allocated);
+            }
+            if (!advanced) {
+                return false;
+            }
+            T item = current;
+            current = null;
+            stage.records++;
+            action.accept(item);
+            return true;
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return source.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return source.characteristics() & (ORDERED | NONNULL | IMMUTABLE);
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * One stage of a run, committed when the run ends
+     */
+    @Name("app.PipelineStage")
+    @Label("Pipeline Stage")
+    @Category("CarApp")
+    @Description("Time, cars, bytes and allocations of one stage of a run")
+    static class StageEvent extends Event {
+        @Label("Stage")
+        String stage;
+
+        @Label("Wall Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long wallTime;
+
+        @Label("Cars In")
+        @Description("-1 for the first stage")
+        long recordsIn;
+
+        @Label("Cars Out")
+        @Description("-1 for the output stage")
+        long recordsOut;
+
+        @Label("Bytes")
+        @Description("Bytes read by the first stage and written by the output stage, -1 for the others")
+        @DataAmount
+        long bytes;
+
+        @Label("Allocated")
+        @DataAmount
+        long allocated;
+    }
+}
@@ -0,0 +1,370 @@
+package app.service;
+
+import app.model.CarTable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * This class used for keeping parsed datasets and formatted results between the runs of one
+ * session, so asking for the same files and query again is answered without parsing, filtering
+ * and sorting. The entries are weighed by their estimated size in bytes and the least recently
+ * used ones are dropped when the memory budget is used up. With a directory the formatted output
+ * is also kept on disk, where it outlives the session.
+ * <p>
+ * Files are recognized by their path, size and last modified time, so a changed file is read again.
+ * A file system may keep the time in whole seconds, and an edit keeping the size within that second
+ * would then look unchanged, so with a directory, whose results outlive the session, the content of
+ * the files is checksummed as well.
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+public class ResultCache {
+
+    /** Part of every key, raise it when the output of the same query changes */
+    private static final int KEY_VERSION = 2;
+    private static final long DISK_BUDGET = 1L << 30;
+    private static final String DISK_SUFFIX = ".out";
+    private static final int CHECKSUM_BUFFER_SIZE = 64 * 1024;
+
+    private final long memoryBudget;
+    private final Path directory;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes;
+
+    /**
+     * @param memoryBudget the bytes the entries may take in memory, 0 keeps nothing in memory
+     * @param directory where the formatted output is kept on disk, or null to keep it in memory only
+     */
+    public ResultCache(long memoryBudget, Path directory) {
+        if (memoryBudget < 0) {
+            throw new IllegalArgumentException("Memory budget must not be negative: " + memoryBudget);
+        }
+        this.memoryBudget = memoryBudget;
+        this.directory = directory;
+    }
+
+    /**
+     * @return a quarter of the maximum heap
+     */
+    public static long defaultMemoryBudget() {
+        return Runtime.getRuntime().maxMemory() / 4;
+    }
+
+    /**
+     * @return the bytes the entries may take in memory
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * The key of the cars parsed from the given files
+     * 
+     * @param xmlFiles
+     * @param csvFiles
+     * @param modelsFile null for the built in models
+     * @return the key
+     * @throws IOException when a file cannot be read
+     */
+    public String datasetKey(List<String> xmlFiles, List<String> csvFiles, String modelsFile) throws IOException {
+        StringBuilder key = new StringBuilder("v").append(KEY_VERSION);
+        for (String file : xmlFiles) {
+            key.append("|xml=").append(fingerprint(file));
+        }
+        for (String file : csvFiles) {
+            key.append("|csv=").append(fingerprint(file));
+        }
+        if (modelsFile != null) {
+            key.append("|models=").append(fingerprint(modelsFile));
+        }
+        return key.toString();
+    }
+
+    /**
+     * The key of a formatted result. The sort and output names are compared ignoring case, like
+     * they are applied; the filter and --where are taken as they are, since a space inside a quoted
+     * value or around a filter value changes which cars match
+     * 
+     * @param datasetKey from {@link #datasetKey(List, List, String)}
+     * @param ratesFile
+     * @param filterType
+     * @param filterValue
+     * @param where
+     * @param sort
+     * @param limit
+     * @param groups the --aggregate groups
+     * @param output
+     * @param codec the --compress codec
+     * @return the key
+     * @throws IOException when the rates file cannot be read
+     */
+    public String resultKey(String datasetKey, String ratesFile, String filterType, String filterValue,
+                                   String where, String sort, Integer limit, List<String> groups, String output,
+                                   String codec) throws IOException {
+        return datasetKey
+                + "|rates=" + (ratesFile != null ? fingerprint(ratesFile) : "")
+                + "|filter=" + raw(filterType) + ":" + raw(filterValue)
+                + "|where=" + raw(where)
+                + "|sort=" + lower(sort)
+                + "|limit=" + (limit != null ? limit : "")
+                + "|aggregate=" + (groups != null ? String.join(",", groups) : "")
+                + "|output=" + lower(output)
+                + "|compress=" + lower(codec);
+    }
+
+    /**
+     * @param key
+     * @return the parsed cars, or null when they are not cached
+     */
+    public synchronized CarTable getDataset(String key) {
+        Entry entry = entries.get(key);
+        return entry != null && entry.value instanceof CarTable ? (CarTable) entry.value : null;
+    }
+
+    /**
+     * Keep the parsed cars, unless they are larger than the memory budget
+     * 
+     * @param key
+     * @param table the cars, which must not be changed afterwards
+     */
+    public synchronized void putDataset(String key, CarTable table) {
+        put(key, new Entry(table, table.estimatedBytes()));
+    }
+
+    /**
+     * Write a cached result
+     * 
+     * @param key
+     * @param out
+     * @return false when the result is neither in memory nor on disk, nothing is written then
+     * @throws IOException
+     */
+    public boolean writeResult(String key, OutputStream out) throws IOException {
+        byte[] result = getResult(key);
+        if (result == null) {
+            return false;
+        }
+        out.write(result);
+        out.flush();
+        return true;
+    }
+
+    /**
+     * Start recording what is written to out, to be kept with {@link #putResult(String, Capture)}
+     * once it is complete. A result larger than the memory budget, or a quarter of the heap when
+     * there is a directory, is written but not recorded
+     * 
+     * @param out
+     * @return a stream writing to out
+     */
+    public Capture capture(OutputStream out) {
+        return new Capture(out, directory != null ? Math.max(memoryBudget, defaultMemoryBudget()) : memoryBudget);
+    }
+
+    /**
+     * Keep a complete result in memory and on disk
+     * 
+     * @param key
+     * @param capture
+     * @throws IOException when it cannot be written to disk
+     */
+    public void putResult(String key, Capture capture) throws IOException {
+        if (capture.overflowed) {
+            return;
+        }
+        byte[] result = capture.buffer.toByteArray();
+        synchronized (this) {
+            put(key, new Entry(result, result.length));
+        }
+        if (directory != null) {
+            writeToDisk(key, result);
+        }
+    }
+
+    private byte[] getResult(String key) throws IOException {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.value instanceof byte[]) {
+                return (byte[]) entry.value;
+            }
+        }
+        if (directory == null) {
+            return null;
+        }
+        Path file = directory.resolve(fileName(key));
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        byte[] result = Files.readAllBytes(file);
+        // The last modified time orders the files for eviction
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        synchronized (this) {
+            put(key, new Entry(result, result.length));
+        }
+        return result;
+    }
+
+    private void put(String key, Entry entry) {
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            usedBytes -= previous.weight;
+        }
+        if (entry.weight > memoryBudget) {
+            return;
+        }
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (usedBytes + entry.weight > memoryBudget && eldest.hasNext()) {
+            usedBytes -= eldest.next().weight;
+            eldest.remove();
+        }
+        entries.put(key, entry);
+        usedBytes += entry.weight;
+    }
+
+    private void writeToDisk(String key, byte[] result) throws IOException {
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, "result-", ".tmp");
+        try {
+            Files.write(temporary, result);
+            Files.move(temporary, directory.resolve(fileName(key)), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+
+        // Remove the least recently used results until the directory fits its budget again
+        List<Path> files;
+        try (Stream<Path> listed = Files.list(directory)) {
+            files = listed.filter(file -> file.getFileName().toString().endsWith(DISK_SUFFIX)).collect(Collectors.toList());
+        }
+        Map<Path, BasicFileAttributes> attributes = new LinkedHashMap<>();
+        long total = 0;
+        for (Path file : files) {
+            BasicFileAttributes fileAttributes = Files.readAttributes(file, BasicFileAttributes.class);
+            attributes.put(file, fileAttributes);
+            total += fileAttributes.size();
+        }
+        files.sort((f1, f2) -> attributes.get(f1).lastModifiedTime().compareTo(attributes.get(f2).lastModifiedTime()));
+        for (Path file : files) {
+            if (total <= DISK_BUDGET) break;
+            total -= attributes.get(file).size();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private String fingerprint(String file) throws IOException {
+        Path path = Paths.get(file).toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        String fingerprint = path + ":" + attributes.size() + ":" + attributes.lastModifiedTime().toMillis();
+        return directory != null ? fingerprint + ":" + checksum(path) : fingerprint;
+    }
+
+    private static String checksum(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        byte[] buffer = new byte[CHECKSUM_BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            for (int read; (read = in.read(buffer)) > 0; ) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return Long.toHexString(crc.getValue());
+    }
+
+    private static String fileName(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest) {
+                name.append(String.format("%02x", b));
+            }
+            return name.append(DISK_SUFFIX).toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String lower(String value) {
+        return value != null ? value.toLowerCase(Locale.ROOT) : "";
+    }
+
+    /**
+     * @return the value, quoted so no value can run into the next part of the key
+     */
+    private static String raw(String value) {
+        return value != null ? "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"" : "";
+    }
+
+    private static final class Entry {
+        final Object value;
+        final long weight;
+
+        Entry(Object value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * A stream writing through to another one and recording the bytes, up to a limit
+     */
+    public static final class Capture extends FilterOutputStream {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private final long limit;
+        private boolean overflowed;
+
+        Capture(OutputStream out, long limit) {
+            super(out);
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            record(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            record(b, off, len);
+        }
+
+        private void record(byte[] b, int off, int len) {
+            if (overflowed) return;
+            if (buffer.size() + (long) len > Math.min(limit, Integer.MAX_VALUE - 8)) {
+                overflowed = true;
+                buffer.reset();
+                return;
+            }
+            buffer.write(b, off, len);
+        }
+
+        /**
+         * Flushes but does not close the stream written to
+         */
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
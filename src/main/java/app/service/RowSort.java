@@ -0,0 +1,77 @@
+package app.service;
+
+import java.util.Arrays;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Sorting of row numbers of a {@link app.model.CarTable} with a comparator over the rows, or for
+ * large inputs with a primitive key per row that is sorted in parallel
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+class RowSort {
+
+    private RowSort() {
+    }
+
+    /**
+     * Stable merge sort of row numbers, so equal rows keep their order like Collections.sort does
+     * 
+     * @param rows
+     * @param comparator
+     */
+    static void mergeSort(int[] rows, IntBinaryOperator comparator) {
+        int[] buffer = new int[rows.length];
+        for (int width = 1; width < rows.length; width *= 2) {
+            for (int left = 0; left < rows.length - width; left += 2 * width) {
+                int middle = left + width;
+                int right = Math.min(left + 2 * width, rows.length);
+                if (comparator.applyAsInt(rows[middle - 1], rows[middle]) <= 0) continue;
+
+                int i = left, j = middle, k = left;
+                while (i < middle && j < right) {
+                    buffer[k++] = comparator.applyAsInt(rows[i], rows[j]) <= 0 ? rows[i++] : rows[j++];
+                }
+                while (i < middle) buffer[k++] = rows[i++];
+                while (j < right) buffer[k++] = rows[j++];
+                System.arraycopy(buffer, left, rows, left, right - left);
+            }
+        }
+    }
+
+    /**
+     * Stable parallel sort by primitive keys. Every key is replaced by its rank among the distinct
+     * keys, and the rank and the position are packed into one long, so a single parallel sort of
+     * longs orders the positions by key and equal keys by position
+     * 
+     * @param keys one key per position, smaller keys first
+     * @return the positions in key order
+     */
+    static int[] orderByKey(long[] keys) {
+        int n = keys.length;
+        long[] distinct = keys.clone();
+        Arrays.parallelSort(distinct);
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || distinct[i] != distinct[count - 1]) distinct[count++] = distinct[i];
+        }
+        int distinctCount = count;
+
+        long[] packed = new long[n];
+        Arrays.parallelSetAll(packed, i -> (long) Arrays.binarySearch(distinct, 0, distinctCount, keys[i]) << 32 | i);
+        Arrays.parallelSort(packed);
+        int[] order = new int[n];
+        Arrays.parallelSetAll(order, i -> (int) packed[i]);
+        return order;
+    }
+
+    /**
+     * @param value
+     * @return a key whose order is the reverse of {@link Double#compare}, including -0.0 and NaN
+     */
+    static long descendingKey(double value) {
+        long bits = Double.doubleToLongBits(value);
+        // Flip the magnitude of negative numbers so the signed longs compare like Double.compare
+        return ~(bits ^ ((bits >> 63) & Long.MAX_VALUE));
+    }
+}
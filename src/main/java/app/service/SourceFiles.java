@@ -0,0 +1,105 @@
+package app.service;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * This class used for turning an --xml or --csv argument into the files it names. The argument
+ * can be a file, a directory, whose files with the given extension, plain or compressed, are taken
+ * including the ones in sub directories, or a glob like "regions/*.xml" or "deliveries/**&#47;cars-*.xml".
+ * The files are sorted by path, so the cars always come in the same order.
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+public class SourceFiles {
+
+    private static final String GLOB_CHARS = "*?[{";
+
+    /**
+     * @param argument a file, directory or glob
+     * @param extension the extension of the files taken from a directory, e.g. ".xml"
+     * @return the files, sorted by path; a plain file is returned as it is, even when it does not exist
+     * @throws IOException when a directory cannot be read
+     * @throws IllegalArgumentException when a directory or glob has no files
+     */
+    public static List<String> resolve(String argument, String extension) throws IOException {
+        int firstGlob = indexOfGlob(argument);
+        if (firstGlob < 0) {
+            Path path = Paths.get(argument);
+            if (!Files.isDirectory(path)) {
+                return Collections.singletonList(argument);
+            }
+            String suffix = extension.toLowerCase(Locale.ROOT);
+            return found(argument, walk(path, Integer.MAX_VALUE,
+                    file -> hasExtension(file.getFileName().toString().toLowerCase(Locale.ROOT), suffix)));
+        }
+
+        // The directory part before the first glob char is walked, the rest is matched
+        int separator = Math.max(argument.lastIndexOf('/', firstGlob), argument.lastIndexOf('\\', firstGlob));
+        Path base = Paths.get(separator < 0 ? "." : argument.substring(0, separator + 1));
+        String pattern = argument.substring(separator + 1);
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        int depth = pattern.contains("**") ? Integer.MAX_VALUE : pattern.split("[/\\\\]").length;
+        if (!Files.isDirectory(base)) {
+            throw new IllegalArgumentException("No files match " + argument + ", " + base + " is not a directory");
+        }
+        return found(argument, walk(base, depth, file -> matcher.matches(base.relativize(file))));
+    }
+
+    /**
+     * @return the total size of the files in bytes, missing files count as 0
+     */
+    public static long size(List<String> files) {
+        long size = 0;
+        for (String file : files) {
+            size += Paths.get(file).toFile().length();
+        }
+        return size;
+    }
+
+    private static List<String> walk(Path directory, int depth, Predicate<Path> filter) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory, depth)) {
+            return paths
+                    .filter(Files::isRegularFile)
+                    .filter(filter)
+                    .map(Path::toString)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static List<String> found(String argument, List<String> files) {
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("No files match " + argument);
+        }
+        return files;
+    }
+
+    /**
+     * @return true when the name ends with the extension, also when it is compressed, e.g. cars.xml.gz
+     */
+    private static boolean hasExtension(String name, String extension) {
+        if (name.endsWith(extension)) return true;
+        for (String compressed : Compression.FILE_SUFFIXES) {
+            if (name.endsWith(extension + compressed)) return true;
+        }
+        return false;
+    }
+
+    private static int indexOfGlob(String argument) {
+        for (int i = 0; i < argument.length(); i++) {
+            if (GLOB_CHARS.indexOf(argument.charAt(i)) >= 0) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,682 @@
+package app.service;
+
+import app.model.Car;
+import app.model.CarTable;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.DoublePredicate;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * This class used for compiling the --where expressions into one predicate, for example
+ * <pre>
+ * brand in (Toyota,Honda) and price.EUR between 20000 and 40000 and release &gt;= 2023-01-01
+ * </pre>
+ * Fields are brand, type, model, release and price (USD) or price.CURRENCY. Text fields support
+ * =, != and in, compared ignoring case; release and price support =, !=, &lt;, &lt;=, &gt;, &gt;=,
+ * in and between. Clauses combine with and, or, not and parentheses. Values with spaces are quoted
+ * with ' or ". A missing price counts as 0 like in the other filters
+ * unless it is derived with a {@link CurrencyConverter}, a missing release date never matches,
+ * also not under not: a car without one fails both "release = 2023-01-01" and
+ * "not release = 2023-01-01", like a null in SQL.
+ * <p>
+ * The clauses of every and/or are ordered by their cost, so the cheap comparisons run first and
+ * the expensive ones are skipped whenever the result is already known. An expression compiled for
+ * a {@link CarTable} reads the columns of a row directly, without creating its {@link Car}.
+ * 
+ * @author Angga Bayu S (anggabs86@gmail.com)
+ */
+public class WhereExpression {
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private final List<Token> tokens;
+    private final CarTable table;
+    private final Set<String> currencies = new LinkedHashSet<>();
+    private int position;
+
+    private WhereExpression(String expression, CarTable table) {
+        this.tokens = tokenize(expression);
+        this.table = table;
+    }
+
+    /**
+     * Parse the expression and compile it into a predicate
+     * 
+     * @param expression
+     * @return Predicate over Car
+     * @throws IllegalArgumentException when the expression is not valid
+     */
+    public static Predicate<Car> compile(String expression) {
+        Clause clause = new WhereExpression(expression, null).parse();
+        return clause::test;
+    }
+
+    /**
+     * Parse the expression and compile it into a predicate over the rows of a table. The table
+     * must not get new currencies afterwards
+     * 
+     * @param expression
+     * @param table
+     * @return IntPredicate over the rows of the table
+     * @throws IllegalArgumentException when the expression is not valid
+     */
+    public static IntPredicate compile(String expression, CarTable table) {
+        Clause clause = new WhereExpression(expression, table).parse();
+        return clause::test;
+    }
+
+    /**
+     * Parse the expression and list the currencies its price fields compare
+     * 
+     * @param expression
+     * @return the currencies, in the order they appear
+     * @throws IllegalArgumentException when the expression is not valid
+     */
+    public static Set<String> currencies(String expression) {
+        WhereExpression parser = new WhereExpression(expression, null);
+        parser.parseOr();
+        return parser.currencies;
+    }
+
+    // ---- Parsing ----
+
+    private Clause parse() {
+        Clause clause = parseOr();
+        if (peek() != null) {
+            throw error("Unexpected '" + peek().text + "'");
+        }
+        return clause;
+    }
+
+    private Clause parseOr() {
+        List<Clause> clauses = new ArrayList<>();
+        clauses.add(parseAnd());
+        while (acceptKeyword("or")) {
+            clauses.add(parseAnd());
+        }
+        return clauses.size() == 1 ? clauses.get(0) : new Any(clauses);
+    }
+
+    private Clause parseAnd() {
+        List<Clause> clauses = new ArrayList<>();
+        clauses.add(parseUnary());
+        while (acceptKeyword("and")) {
+            clauses.add(parseUnary());
+        }
+        return clauses.size() == 1 ? clauses.get(0) : new All(clauses);
+    }
+
+    private Clause parseUnary() {
+        if (acceptKeyword("not")) {
+            return new Not(parseUnary());
+        }
+        if (accept("(")) {
+            Clause clause = parseOr();
+            expect(")");
+            return clause;
+        }
+        return parseComparison();
+    }
+
+    private Clause parseComparison() {
+        Token fieldToken = peek();
+        if (fieldToken == null) throw error("Expected a field but the expression ended");
+        Field field = Field.of(fieldToken, table);
+        if (field == null) {
+            throw error("Unknown field '" + fieldToken.text + "', allowed: brand, type, model, release, price, price.<currency>");
+        }
+        position++;
+        if (field instanceof PriceField) {
+            currencies.add(((PriceField) field).currency);
+        }
+
+        if (acceptKeyword("in")) {
+            return field.in(parseList());
+        }
+        if (acceptKeyword("not")) {
+            if (!acceptKeyword("in")) throw error("Expected 'in' after 'not'");
+            return new Not(field.in(parseList()));
+        }
+        if (acceptKeyword("between")) {
+            String low = next("a value").text;
+            if (!acceptKeyword("and")) throw error("Expected 'and' in between");
+            String high = next("a value").text;
+            return field.between(low, high);
+        }
+
+        Token operator = next("an operator");
+        if (!operator.isOperator()) {
+            throw error("Expected an operator after " + fieldToken.text + " but found '" + operator.text + "'");
+        }
+        return field.compare(operator.text, next("a value").text);
+    }
+
+    private List<String> parseList() {
+        expect("(");
+        List<String> values = new ArrayList<>();
+        values.add(next("a value").text);
+        while (accept(",")) {
+            values.add(next("a value").text);
+        }
+        expect(")");
+        return values;
+    }
+
+    private Token peek() {
+        return position < tokens.size() ? tokens.get(position) : null;
+    }
+
+    private Token next(String expected) {
+        Token token = peek();
+        if (token == null) throw error("Expected " + expected + " but the expression ended");
+        position++;
+        return token;
+    }
+
+    private boolean accept(String symbol) {
+        Token token = peek();
+        if (token != null && !token.quoted && token.text.equals(symbol)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean acceptKeyword(String keyword) {
+        Token token = peek();
+        if (token != null && !token.quoted && token.text.equalsIgnoreCase(keyword)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String symbol) {
+        if (!accept(symbol)) throw error("Expected '" + symbol + "'");
+    }
+
+    private IllegalArgumentException error(String message) {
+        Token token = peek();
+        int at = token != null ? token.offset : -1;
+        return new IllegalArgumentException("Invalid --where expression"
+                + (at >= 0 ? " at position " + (at + 1) : "") + ": " + message);
+    }
+
+    private static List<Token> tokenize(String expression) {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < expression.length()) {
+            char c = expression.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')' || c == ',') {
+                tokens.add(new Token(String.valueOf(c), i, false));
+                i++;
+            } else if (c == '=' || c == '!' || c == '<' || c == '>') {
+                int start = i++;
+                if (i < expression.length() && expression.charAt(i) == '=') i++;
+                String operator = expression.substring(start, i);
+                if (operator.equals("!")) {
+                    throw new IllegalArgumentException("Invalid --where expression at position " + (start + 1) + ": Expected '!='");
+                }
+                tokens.add(new Token(operator, start, false));
+            } else if (c == '\'' || c == '"') {
+                int end = expression.indexOf(c, i + 1);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Invalid --where expression at position " + (i + 1) + ": Unclosed quote");
+                }
+                tokens.add(new Token(expression.substring(i + 1, end), i, true));
+                i = end + 1;
+            } else {
+                int start = i;
+                while (i < expression.length() && isWordChar(expression.charAt(i))) i++;
+                if (start == i) {
+                    throw new IllegalArgumentException("Invalid --where expression at position " + (i + 1) + ": Unexpected '" + c + "'");
+                }
+                tokens.add(new Token(expression.substring(start, i), start, false));
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '.' || c == '-' || c == '_' || c == '+';
+    }
+
+    private static class Token {
+        final String text;
+        final int offset;
+        final boolean quoted;
+
+        Token(String text, int offset, boolean quoted) {
+            this.text = text;
+            this.offset = offset;
+            this.quoted = quoted;
+        }
+
+        boolean isOperator() {
+            return !quoted && (text.equals("=") || text.equals("!=") || text.equals("<")
+                    || text.equals("<=") || text.equals(">") || text.equals(">="));
+        }
+    }
+
+    // ---- Fields ----
+
+    /**
+     * A field of the car, turning comparisons into clauses with the values converted once
+     */
+    private abstract static class Field {
+
+        /**
+         * The field named by the token, or null when there is no such field
+         * 
+         * @param token
+         * @param table the table whose rows are tested, or null to test cars
+         */
+        static Field of(Token token, CarTable table) {
+            String name = token.text.toLowerCase(Locale.ROOT);
+            if (!token.quoted) {
+                switch (name) {
+                    case "brand":
+                        return new TextField(Car::getBrand, table != null ? table::getBrand : null);
+                    case "type":
+                        return new TextField(Car::getType, table != null ? table::getType : null);
+                    case "model":
+                        return new TextField(Car::getModel, table != null ? table::getModel : null);
+                    case "release":
+                        return new ReleaseField(table);
+                    case "price":
+                        return new PriceField("USD", table);
+                    default:
+                        if (name.startsWith("price.") && name.length() > "price.".length()) {
+                            return new PriceField(token.text.substring("price.".length()).toUpperCase(Locale.ROOT), table);
+                        }
+                }
+            }
+            return null;
+        }
+
+        abstract Clause compare(String operator, String value);
+
+        abstract Clause in(List<String> values);
+
+        abstract Clause between(String low, String high);
+    }
+
+    private static class TextField extends Field {
+        private final Function<Car, String> getter;
+        private final IntFunction<String> rowGetter;
+
+        TextField(Function<Car, String> getter, IntFunction<String> rowGetter) {
+            this.getter = getter;
+            this.rowGetter = rowGetter;
+        }
+
+        @Override
+        Clause compare(String operator, String value) {
+            Clause equal = new TextClause(1, actual -> actual != null && actual.equalsIgnoreCase(value));
+            switch (operator) {
+                case "=":
+                    return equal;
+                case "!=":
+                    return new Not(equal);
+                default:
+                    throw new IllegalArgumentException("Invalid --where expression: operator " + operator
+                            + " is not supported on text fields, use =, != or in");
+            }
+        }
+
+        @Override
+        Clause in(List<String> values) {
+            String[] candidates = values.toArray(new String[0]);
+            return new TextClause(candidates.length, actual -> {
+                if (actual == null) return false;
+                for (String candidate : candidates) {
+                    if (actual.equalsIgnoreCase(candidate)) return true;
+                }
+                return false;
+            });
+        }
+
+        @Override
+        Clause between(String low, String high) {
+            throw new IllegalArgumentException("Invalid --where expression: between is not supported on text fields");
+        }
+
+        private class TextClause extends Clause {
+            private final Predicate<String> matches;
+
+            TextClause(int cost, Predicate<String> matches) {
+                super(cost);
+                this.matches = matches;
+            }
+
+            @Override
+            boolean test(Car car) {
+                return matches.test(getter.apply(car));
+            }
+
+            @Override
+            boolean test(int row) {
+                return matches.test(rowGetter.apply(row));
+            }
+        }
+    }
+
+    /**
+     * Fields compared as numbers, the comparison itself is shared by release and price
+     */
+    private abstract static class NumberField extends Field {
+        private final int cost;
+
+        NumberField(int cost) {
+            this.cost = cost;
+        }
+
+        /** The value of the car, or NaN when the car has none */
+        abstract double valueOf(Car car);
+
+        /** The value of a row of the table, or NaN when the row has none */
+        abstract double valueOf(int row);
+
+        abstract double parse(String value);
+
+        @Override
+        Clause compare(String operator, String text) {
+            double value = parse(text);
+            switch (operator) {
+                case "=":
+                    return range(value, value);
+                case "!=":
+                    return new NumberClause(cost, actual -> !Double.isNaN(actual) && actual != value);
+                case "<":
+                    return range(Double.NEGATIVE_INFINITY, Math.nextDown(value));
+                case "<=":
+                    return range(Double.NEGATIVE_INFINITY, value);
+                case ">":
+                    return range(Math.nextUp(value), Double.POSITIVE_INFINITY);
+                case ">=":
+                    return range(value, Double.POSITIVE_INFINITY);
+                default:
+                    throw new IllegalArgumentException("Invalid --where expression: unknown operator " + operator);
+            }
+        }
+
+        @Override
+        Clause in(List<String> values) {
+            double[] candidates = values.stream().mapToDouble(this::parse).toArray();
+            return new NumberClause(cost + candidates.length, actual -> {
+                for (double candidate : candidates) {
+                    if (actual == candidate) return true;
+                }
+                return false;
+            });
+        }
+
+        @Override
+        Clause between(String low, String high) {
+            return range(parse(low), parse(high));
+        }
+
+        private Clause range(double min, double max) {
+            return new NumberClause(cost, actual -> actual >= min && actual <= max); // false for NaN
+        }
+
+        /**
+         * A comparison that is neither true nor false for a car without a value
+         */
+        private class NumberClause extends Clause {
+            private final DoublePredicate matches;
+
+            NumberClause(int cost, DoublePredicate matches) {
+                super(cost);
+                this.matches = matches;
+            }
+
+            @Override
+            boolean test(Car car) {
+                return matches.test(valueOf(car));
+            }
+
+            @Override
+            boolean test(int row) {
+                return matches.test(valueOf(row));
+            }
+
+            @Override
+            boolean testNot(Car car) {
+                double actual = valueOf(car);
+                return !Double.isNaN(actual) && !matches.test(actual);
+            }
+
+            @Override
+            boolean testNot(int row) {
+                double actual = valueOf(row);
+                return !Double.isNaN(actual) && !matches.test(actual);
+            }
+        }
+    }
+
+    private static class ReleaseField extends NumberField {
+        private final CarTable table;
+
+        ReleaseField(CarTable table) {
+            super(1);
+            this.table = table;
+        }
+
+        @Override
+        double valueOf(Car car) {
+            return car.getReleaseDate() != null ? car.getReleaseDate().toEpochDay() : Double.NaN;
+        }
+
+        @Override
+        double valueOf(int row) {
+            int day = table.getReleaseDay(row);
+            return day != CarTable.NO_DATE ? day : Double.NaN;
+        }
+
+        @Override
+        double parse(String value) {
+            try {
+                return LocalDate.parse(value, DATE_FORMAT).toEpochDay();
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid --where expression: '" + value + "' is not a yyyy-MM-dd date");
+            }
+        }
+    }
+
+    private static class PriceField extends NumberField {
+        private final String currency;
+        private final CarTable table;
+        private final int column;
+
+        PriceField(String currency, CarTable table) {
+            super(2);
+            this.currency = currency;
+            this.table = table;
+            this.column = table != null ? table.getCurrencyColumn(currency) : -1;
+        }
+
+        @Override
+        double valueOf(Car car) {
+            return car.getPrices().getOrDefault(currency, 0.0);
+        }
+
+        @Override
+        double valueOf(int row) {
+            return table.getPrice(row, column, 0.0);
+        }
+
+        @Override
+        double parse(String value) {
+            try {
+                return Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid --where expression: '" + value + "' is not a number");
+            }
+        }
+    }
+
+    // ---- Compiled clauses ----
+
+    /**
+     * A compiled part of the expression, with an estimate of how expensive it is to test. A clause
+     * compiled for a table tests its rows, otherwise it tests cars
+     */
+    private abstract static class Clause {
+        final int cost;
+
+        Clause(int cost) {
+            this.cost = cost;
+        }
+
+        abstract boolean test(Car car);
+
+        abstract boolean test(int row);
+
+        /**
+         * @return true when the clause is false for the car; not the same as !test for a
+         *         comparison with a missing value, which is neither
+         */
+        boolean testNot(Car car) {
+            return !test(car);
+        }
+
+        /**
+         * @return true when the clause is false for the row, see {@link #testNot(Car)}
+         */
+        boolean testNot(int row) {
+            return !test(row);
+        }
+    }
+
+    private static class All extends Clause {
+        private final Clause[] clauses;
+
+        All(List<Clause> clauses) {
+            super(clauses.stream().mapToInt(c -> c.cost).sum());
+            this.clauses = byCost(clauses);
+        }
+
+        @Override
+        boolean test(Car car) {
+            for (Clause clause : clauses) {
+                if (!clause.test(car)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        boolean test(int row) {
+            for (Clause clause : clauses) {
+                if (!clause.test(row)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        boolean testNot(Car car) {
+            for (Clause clause : clauses) {
+                if (clause.testNot(car)) return true;
+            }
+            return false;
+        }
+
+        @Override
+        boolean testNot(int row) {
+            for (Clause clause : clauses) {
+                if (clause.testNot(row)) return true;
+            }
+            return false;
+        }
+    }
+
+    private static class Any extends Clause {
+        private final Clause[] clauses;
+
+        Any(List<Clause> clauses) {
+            super(clauses.stream().mapToInt(c -> c.cost).sum());
+            this.clauses = byCost(clauses);
+        }
+
+        @Override
+        boolean test(Car car) {
+            for (Clause clause : clauses) {
+                if (clause.test(car)) return true;
+            }
+            return false;
+        }
+
+        @Override
+        boolean test(int row) {
+            for (Clause clause : clauses) {
+                if (clause.test(row)) return true;
+            }
+            return false;
+        }
+
+        @Override
+        boolean testNot(Car car) {
+            for (Clause clause : clauses) {
+                if (!clause.testNot(car)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        boolean testNot(int row) {
+            for (Clause clause : clauses) {
+                if (!clause.testNot(row)) return false;
+            }
+            return true;
+        }
+    }
+
+    private static class Not extends Clause {
+        private final Clause clause;
+
+        Not(Clause clause) {
+            super(clause.cost);
+            this.clause = clause;
+        }
+
+        @Override
+        boolean test(Car car) {
+            return clause.testNot(car);
+        }
+
+        @Override
+        boolean test(int row) {
+            return clause.testNot(row);
+        }
+
+        @Override
+        boolean testNot(Car car) {
+            return clause.test(car);
+        }
+
+        @Override
+        boolean testNot(int row) {
+            return clause.test(row);
+        }
+    }
+
+    private static Clause[] byCost(List<Clause> clauses) {
+        List<Clause> sorted = new ArrayList<>(clauses);
+        sorted.sort(Comparator.comparingInt(c -> c.cost));
+        return sorted.toArray(new Clause[0]);
+    }
+}